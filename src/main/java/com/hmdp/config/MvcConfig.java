@@ -2,6 +2,13 @@ package com.hmdp.config;
 
 import com.hmdp.interceptor.LoginInterceptor;
 import com.hmdp.interceptor.RefreshTokenInterceptor;
+import com.hmdp.interceptor.SeckillAdmissionInterceptor;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.utils.LoginSessionCache;
+import com.hmdp.utils.SignedTokenCodec;
+import com.hmdp.utils.TokenDenylist;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
@@ -14,6 +21,23 @@ public class MvcConfig implements WebMvcConfigurer {
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private MeterRegistry meterRegistry;
+    @Resource
+    private LoginSessionCache loginSessionCache;
+    @Resource
+    private SignedTokenCodec signedTokenCodec;
+    @Resource
+    private TokenDenylist tokenDenylist;
+
+    @Value("${hmdp.order.admission.enabled:true}")
+    private boolean admissionEnabled;
+    @Value("${hmdp.order.admission.lease-size:50}")
+    private int admissionLeaseSize;
+    @Value("${hmdp.order.admission.retry-millis:1000}")
+    private long admissionRetryMillis;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -21,13 +45,20 @@ public class MvcConfig implements WebMvcConfigurer {
         registry.addInterceptor(new LoginInterceptor())
                 .excludePathPatterns(
                         "/shop/**",
-                        "/voucher/**",
+                        // 只有查询店铺优惠券列表公开，新增、修改优惠券和补货需要登录
+                        "/voucher/list/**",
                         "/shop-type/**",
                         "/upload/**",
                         "/blog/hot",
                         "/user/code",
                         "/user/login"
                 ).order(1);
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(loginSessionCache, signedTokenCodec, tokenDenylist)).addPathPatterns("/**").order(0);
+        // 秒杀准入拦截器，放在登录拦截之后，未登录的请求不占用许可
+        if (admissionEnabled) {
+            registry.addInterceptor(new SeckillAdmissionInterceptor(stringRedisTemplate, seckillVoucherService,
+                            meterRegistry, admissionLeaseSize, admissionRetryMillis))
+                    .addPathPatterns("/voucher-order/seckill/**").order(2);
+        }
     }
 }
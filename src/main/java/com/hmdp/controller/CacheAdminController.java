@@ -0,0 +1,51 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.ICacheWarmUpService;
+import com.hmdp.utils.HotKeyDetector;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private ICacheWarmUpService cacheWarmUpService;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 触发缓存预热
+     * @return 预热进度
+     */
+    @PostMapping("/warm-up")
+    public Result warmUp() {
+        if (!cacheWarmUpService.start()) {
+            return Result.fail("缓存预热正在进行中");
+        }
+        return Result.ok(cacheWarmUpService.progress());
+    }
+
+    /**
+     * 查询缓存预热进度
+     * @return 预热进度
+     */
+    @GetMapping("/warm-up")
+    public Result warmUpProgress() {
+        return Result.ok(cacheWarmUpService.progress());
+    }
+
+    /**
+     * 查询当前的热点 key 及其命中次数
+     * @return 热点 key 列表
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.hotKeys());
+    }
+}
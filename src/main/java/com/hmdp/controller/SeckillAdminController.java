@@ -0,0 +1,42 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.StockDriftDTO;
+import com.hmdp.service.IStockReconcileService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin/seckill")
+public class SeckillAdminController {
+
+    @Resource
+    private IStockReconcileService stockReconcileService;
+
+    /**
+     * 立即对账秒杀库存
+     * @return 存在偏差的秒杀券
+     */
+    @PostMapping("/reconcile")
+    public Result reconcileStock() {
+        List<StockDriftDTO> report = stockReconcileService.reconcile();
+        if (report == null) {
+            return Result.fail("库存对账正在进行中");
+        }
+        return Result.ok(report);
+    }
+
+    /**
+     * 查询最近一次秒杀库存对账发现的偏差
+     * @return 存在偏差的秒杀券
+     */
+    @GetMapping("/reconcile")
+    public Result stockDriftReport() {
+        return Result.ok(stockReconcileService.lastReport());
+    }
+}
@@ -3,6 +3,7 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
+import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
 import org.springframework.web.bind.annotation.*;
 
@@ -22,6 +23,8 @@ public class VoucherController {
 
     @Resource
     private IVoucherService voucherService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
 
     /**
      * 新增普通券
@@ -30,7 +33,7 @@ public class VoucherController {
      */
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
-        voucherService.save(voucher);
+        voucherService.addVoucher(voucher);
         return Result.ok(voucher.getId());
     }
 
@@ -45,6 +48,31 @@ public class VoucherController {
         return Result.ok(voucher.getId());
     }
 
+    /**
+     * 修改优惠券，秒杀券可以同时修改时间窗口
+     * @param voucher 优惠券信息
+     * @return 无
+     */
+    @PutMapping
+    public Result updateVoucher(@RequestBody Voucher voucher) {
+        return voucherService.updateVoucher(voucher);
+    }
+
+    /**
+     * 补充秒杀券库存
+     * @param id 优惠券id
+     * @param amount 补充的数量
+     * @return 无
+     */
+    @PutMapping("seckill/{id}/stock")
+    public Result replenishStock(@PathVariable("id") Long id, @RequestParam("amount") Integer amount) {
+        if (amount == null || amount <= 0) {
+            return Result.fail("补充数量必须大于0");
+        }
+        seckillVoucherService.replenishStock(id, amount);
+        return Result.ok();
+    }
+
     /**
      * 查询店铺的优惠券列表
      * @param shopId 店铺id
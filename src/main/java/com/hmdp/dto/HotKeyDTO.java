@@ -0,0 +1,16 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class HotKeyDTO {
+    private String key;
+    /**
+     * 晋升为热点时滑动窗口内的估算访问次数
+     */
+    private Long frequency;
+    /**
+     * 晋升后在本地热点缓存中的命中次数
+     */
+    private Long hits;
+}
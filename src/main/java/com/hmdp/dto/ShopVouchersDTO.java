@@ -0,0 +1,14 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.Voucher;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 店铺的优惠券列表，缓存组件按实体类型编解码，列表包装成对象后缓存
+ */
+@Data
+public class ShopVouchersDTO {
+    private List<Voucher> vouchers;
+}
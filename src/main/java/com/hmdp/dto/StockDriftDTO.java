@@ -0,0 +1,29 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+@Data
+public class StockDriftDTO {
+    private Long voucherId;
+    /**
+     * Redis 中各个库存桶之和
+     */
+    private Long redisStock;
+    private Long dbStock;
+    /**
+     * 数据库中未取消的订单数
+     */
+    private Long dbOrders;
+    /**
+     * Redis 下单用户 bitmap 中的用户数
+     */
+    private Long buyers;
+    /**
+     * Redis 库存减去按数据库推算的库存，正数表示 Redis 多出库存，有超卖风险
+     */
+    private Long drift;
+    /**
+     * 本轮是否已自动修正 Redis 库存
+     */
+    private Boolean corrected;
+}
@@ -0,0 +1,20 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class WarmUpProgress {
+    private Boolean running;
+    /**
+     * 当前预热的数据：shop / shopType / voucher
+     */
+    private String phase;
+    private Long shops;
+    private Long shopTypes;
+    private Long vouchers;
+    private LocalDateTime startTime;
+    private LocalDateTime endTime;
+    private String errorMsg;
+}
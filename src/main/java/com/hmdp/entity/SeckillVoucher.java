@@ -1,6 +1,7 @@
 package com.hmdp.entity;
 
 import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
 import com.baomidou.mybatisplus.annotation.TableId;
 import com.baomidou.mybatisplus.annotation.TableName;
 import lombok.Data;
@@ -37,6 +38,12 @@ public class SeckillVoucher implements Serializable {
      */
     private Integer stock;
 
+    /**
+     * 库存在 Redis 中拆分的分桶数，不落库，记录在秒杀时间窗口 hash 中
+     */
+    @TableField(exist = false)
+    private Integer stockBuckets;
+
     /**
      * 创建时间
      */
@@ -78,6 +78,12 @@ public class Voucher implements Serializable {
     @TableField(exist = false)
     private Integer stock;
 
+    /**
+     * 秒杀库存在 Redis 中拆分的分桶数，为空或 1 时不拆分
+     */
+    @TableField(exist = false)
+    private Integer stockBuckets;
+
     /**
      * 生效时间
      */
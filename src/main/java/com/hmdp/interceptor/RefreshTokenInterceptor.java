@@ -1,26 +1,27 @@
 package com.hmdp.interceptor;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.LoginSessionCache;
+import com.hmdp.utils.SignedTokenCodec;
+import com.hmdp.utils.TokenDenylist;
 import com.hmdp.utils.UserHolder;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
-import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
 
 public class RefreshTokenInterceptor implements HandlerInterceptor {
 
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessionCache loginSessionCache;
+    private SignedTokenCodec signedTokenCodec;
+    private TokenDenylist tokenDenylist;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public RefreshTokenInterceptor(LoginSessionCache loginSessionCache, SignedTokenCodec signedTokenCodec,
+                                   TokenDenylist tokenDenylist) {
+        this.loginSessionCache = loginSessionCache;
+        this.signedTokenCodec = signedTokenCodec;
+        this.tokenDenylist = tokenDenylist;
     }
 
     @Override
@@ -30,23 +31,26 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
         if (StrUtil.isBlank(token)) {
             return true;
         }
-        // 2.基于TOKEN获取redis中的用户
-        String key  = LOGIN_USER_KEY + token;
-        Map<Object, Object> userMap = stringRedisTemplate.opsForHash().entries(key);
+        // 2.签名令牌只校验签名、过期时间和本地黑名单；会话令牌查询本地缓存，未命中时查询redis，有效期由刷新引擎按需批量刷新
+        UserDTO userDTO = SignedTokenCodec.isSigned(token) ? verify(token) : loginSessionCache.get(token);
         // 3.判断用户是否存在
-        if (userMap.isEmpty()) {
+        if (userDTO == null) {
             return true;
         }
-        // 5.将查询到的hash数据转为UserDTO
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(userMap, new UserDTO(), false);
-        // 6.存在，保存用户信息到 ThreadLocal
+        // 4.存在，保存用户信息到 ThreadLocal
         UserHolder.saveUser(userDTO);
-        // 7.刷新token有效期
-        stringRedisTemplate.expire(key, LOGIN_USER_TTL, TimeUnit.MINUTES);
-        // 8.放行
+        // 5.放行
         return true;
     }
 
+    private UserDTO verify(String token) {
+        SignedTokenCodec.Claims claims = signedTokenCodec.decode(token);
+        if (claims == null || tokenDenylist.isRevoked(claims.getTokenId())) {
+            return null;
+        }
+        return claims.getUser();
+    }
+
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         // 移除用户
@@ -0,0 +1,170 @@
+package com.hmdp.interceptor;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.UserHolder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 秒杀准入：每个节点从 Redis 许可计数中按批租用许可，在本地用原子计数发放，
+ * 没有许可的请求直接拒绝，访问 Redis 的次数与库存量而不是请求量成正比。
+ * 许可按库存分片在预热时发放一次、归还库存时追加，不随请求量增长；请求先使用所属分片的许可，发完后依次尝试其余分片
+ */
+public class SeckillAdmissionInterceptor implements HandlerInterceptor {
+
+    private static final DefaultRedisScript<Long> PERMIT_SCRIPT;
+
+    static {
+        PERMIT_SCRIPT = new DefaultRedisScript<>();
+        PERMIT_SCRIPT.setLocation(new ClassPathResource("seckill_permit.lua"));
+        PERMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 本地许可最多保留的分片数，以及闲置多久后淘汰；淘汰时未发放的许可作废，由多出库存的那部分许可覆盖
+     */
+    private static final int MAX_LEASES = 10000;
+    private static final long LEASE_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ISeckillVoucherService seckillVoucherService;
+    private final int leaseSize;
+    private final long retryMillis;
+
+    /**
+     * 分片（券id:桶号） -> 本地许可
+     */
+    private final LRUCache<String, Lease> leases = CacheUtil.newLRUCache(MAX_LEASES, LEASE_IDLE_MILLIS);
+
+    private final Counter admitted;
+    private final Counter rejected;
+    private final Counter leased;
+
+    public SeckillAdmissionInterceptor(StringRedisTemplate stringRedisTemplate,
+                                       ISeckillVoucherService seckillVoucherService,
+                                       MeterRegistry registry,
+                                       int leaseSize, long retryMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.seckillVoucherService = seckillVoucherService;
+        this.leaseSize = leaseSize;
+        this.retryMillis = retryMillis;
+        this.admitted = Counter.builder("seckill.admission").tag("result", "admitted").register(registry);
+        this.rejected = Counter.builder("seckill.admission").tag("result", "rejected").register(registry);
+        this.leased = Counter.builder("seckill.admission.leased")
+                .description("从 Redis 租到的许可数")
+                .register(registry);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 1.解析路径中的秒杀券id
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String id = variables == null ? null : variables.get("id");
+        Long voucherId = parseId(id);
+        if (voucherId == null) {
+            // 没有或不是合法的id，放行，由参数绑定返回 400
+            return true;
+        }
+        // 2.使用本地缓存的秒杀券信息校验时间窗口，不在窗口内或秒杀券不存在时放行，由下单接口返回失败原因，不占用许可
+        SeckillVoucher voucher = seckillVoucherService.queryCached(voucherId);
+        LocalDateTime now = LocalDateTime.now();
+        if (voucher == null || now.isBefore(voucher.getBeginTime()) || now.isAfter(voucher.getEndTime())) {
+            return true;
+        }
+        // 3.有许可，放行
+        if (tryAcquire(voucherId, UserHolder.getUser().getId())) {
+            admitted.increment();
+            return true;
+        }
+        // 4.没有许可，直接拒绝
+        rejected.increment();
+        response.setStatus(429);
+        response.setContentType("application/json;charset=UTF-8");
+        response.getOutputStream().write(
+                JSONUtil.toJsonStr(Result.fail("活动太火爆，请稍后再试！")).getBytes(StandardCharsets.UTF_8));
+        return false;
+    }
+
+    private static Long parseId(String id) {
+        if (id == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private boolean tryAcquire(Long voucherId, Long userId) {
+        // 与秒杀脚本一致，从用户所属的分片开始
+        int buckets = seckillVoucherService.stockBuckets(voucherId);
+        int home = SeckillKeys.homeBucket(userId, buckets);
+        for (int i = 0; i < buckets; i++) {
+            if (tryAcquire(SeckillKeys.shard(voucherId, (home + i) % buckets))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean tryAcquire(String shard) {
+        // 读取时刷新闲置时间，仍在秒杀的分片不会被淘汰
+        Lease lease = leases.get(shard, Lease::new);
+        // 1.本地还有许可
+        if (lease.permits.getAndUpdate(p -> p > 0 ? p - 1 : p) > 0) {
+            return true;
+        }
+        // 2.刚刚确认过许可已发完，等待一段时间再去租约，补货后可以恢复
+        if (System.currentTimeMillis() < lease.exhaustedUntil) {
+            return false;
+        }
+        // 3.同一时间只有一个线程去 Redis 租约，其余请求直接拒绝
+        if (!lease.leasing.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            Long granted = stringRedisTemplate.execute(PERMIT_SCRIPT,
+                    Collections.singletonList(SeckillKeys.permit(shard)), String.valueOf(leaseSize));
+            if (granted == null || granted <= 0) {
+                lease.exhaustedUntil = System.currentTimeMillis() + retryMillis;
+                return false;
+            }
+            leased.increment(granted);
+            // 留一个许可给当前请求
+            lease.permits.addAndGet(granted - 1);
+            return true;
+        } finally {
+            lease.leasing.set(false);
+        }
+    }
+
+    private static class Lease {
+        private final AtomicLong permits = new AtomicLong();
+        private final AtomicBoolean leasing = new AtomicBoolean();
+        private volatile long exhaustedUntil;
+    }
+}
@@ -2,6 +2,11 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +18,14 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 多行 INSERT 批量写入订单，其余字段使用表默认值
+     */
+    int insertBatch(@Param("orders") List<VoucherOrder> orders);
+
+    /**
+     * 按秒杀券统计订单数，不包括指定状态的订单，每行包含 voucherId 和 orders
+     */
+    List<Map<String, Object>> countByVoucherIds(@Param("voucherIds") Collection<Long> voucherIds,
+                                                @Param("excludedStatus") int excludedStatus);
 }
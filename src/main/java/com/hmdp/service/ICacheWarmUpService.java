@@ -0,0 +1,15 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.WarmUpProgress;
+
+public interface ICacheWarmUpService {
+
+    /**
+     * 异步开始缓存预热
+     *
+     * @return 已有预热任务在运行时返回 false
+     */
+    boolean start();
+
+    WarmUpProgress progress();
+}
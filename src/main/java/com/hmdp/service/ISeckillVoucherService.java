@@ -3,6 +3,11 @@ package com.hmdp.service;
 import com.hmdp.entity.SeckillVoucher;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  * 秒杀优惠券表，与优惠券是一对一关系 服务类
@@ -13,4 +18,61 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface ISeckillVoucherService extends IService<SeckillVoucher> {
 
+    /**
+     * 将秒杀券的库存、准入许可和时间窗口写入 Redis，供秒杀脚本和准入拦截使用
+     *
+     * @param overwriteStock 是否覆盖 Redis 中已有的库存；秒杀进行中预热时必须为 false
+     */
+    void preload(Collection<SeckillVoucher> vouchers, boolean overwriteStock);
+
+    /**
+     * 秒杀券的库存分片数，未分桶或尚未预热时为 1
+     */
+    int stockBuckets(Long voucherId);
+
+    /**
+     * 秒杀券在 Redis 中的全部库存 key，按分片编号排列
+     */
+    List<String> stockKeys(Long voucherId);
+
+    /**
+     * 批量查询秒杀券在 Redis 中的实时库存（各分片库存之和），一次 pipeline 读取全部库存 key
+     *
+     * @return 秒杀券id到库存的映射，库存 key 不存在（尚未预热）的不包含在结果中
+     */
+    Map<Long, Integer> queryRedisStock(Collection<Long> voucherIds);
+
+    /**
+     * 已预热的全部秒杀分片（券id:桶号），各节点缓存几秒，新预热的分片稍后才会出现
+     */
+    List<String> shards();
+
+    /**
+     * 补充库存（补货或订单退款），同时写入数据库和 Redis，并通知各节点清除本地售罄标记
+     */
+    void replenishStock(Long voucherId, int amount);
+
+    /**
+     * 只归还 Redis 库存并按数量追加准入许可（数据库库存已由调用方归还），并通知各节点清除本地售罄标记
+     */
+    void restoreRedisStock(Long voucherId, int amount);
+
+    /**
+     * 归还已取消订单占用的分片库存，并清除这些用户的下单标记；只归还仍在超时 zset 中的订单，
+     * 归还后订单从 zset 中删除，重复调用不会重复归还
+     *
+     * @param members 超时 zset 中已取消订单的 member
+     * @return 实际归还的数量
+     */
+    int restoreCancelledOrders(String shard, List<String> members, Collection<Long> userIds);
+
+    /**
+     * 查询秒杀券信息，依次查询本地缓存、Redis 和数据库；其中的库存只是快照，实时库存以 Redis 库存 key 为准
+     */
+    SeckillVoucher queryCached(Long voucherId);
+
+    /**
+     * 修改秒杀时间窗口，同步 Redis 中的时间窗口并淘汰各节点的缓存
+     */
+    void updateWindow(Long voucherId, LocalDateTime beginTime, LocalDateTime endTime);
 }
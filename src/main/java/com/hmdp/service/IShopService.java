@@ -6,7 +6,17 @@ import com.baomidou.mybatisplus.extension.service.IService;
 
 public interface IShopService extends IService<Shop> {
 
+    /**
+     * 店铺缓存的查询策略，由 hmdp.shop.cache-mode 指定
+     */
+    String CACHE_MODE_PASS_THROUGH = "pass-through";
+    String CACHE_MODE_MUTEX = "mutex";
+    String CACHE_MODE_LOGICAL_EXPIRE = "logical-expire";
+    String CACHE_MODE_EARLY_REFRESH = "early-refresh";
+
     Result queryById(Long id);
 
+    Result saveShop(Shop shop);
+
     Result updateShop(Shop shop);
 }
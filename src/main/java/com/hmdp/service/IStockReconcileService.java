@@ -0,0 +1,20 @@
+package com.hmdp.service;
+
+import com.hmdp.dto.StockDriftDTO;
+
+import java.util.List;
+
+public interface IStockReconcileService {
+
+    /**
+     * 对账进行中的秒杀券的 Redis 库存、数据库库存和订单数
+     *
+     * @return 存在偏差的秒杀券，其他节点正在对账时返回 null
+     */
+    List<StockDriftDTO> reconcile();
+
+    /**
+     * 最近一次对账发现偏差的秒杀券
+     */
+    List<StockDriftDTO> lastReport();
+}
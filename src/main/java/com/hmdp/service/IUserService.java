@@ -20,4 +20,9 @@ public interface IUserService extends IService<User> {
     Result sendCode(String phone, HttpSession session);
 
     Result login(LoginFormDTO loginForm);
+
+    /**
+     * 删除 token 对应的会话并通知各节点淘汰本地缓存；签名令牌加入黑名单
+     */
+    Result logout(String token);
 }
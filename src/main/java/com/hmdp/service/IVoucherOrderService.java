@@ -4,7 +4,24 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
+
+    /**
+     * 写入单个订单并扣减库存，订单已存在时直接返回；未能落库时抛出异常
+     */
+    void createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 在一个事务中批量写入订单，并按秒杀券汇总扣减库存，任一步失败整批回滚
+     */
+    void createVoucherOrders(List<VoucherOrder> voucherOrders);
+
+    /**
+     * 取消其中仍未支付的订单并归还数据库库存，返回本次取消的订单
+     */
+    List<VoucherOrder> cancelUnpaidOrders(List<Long> orderIds);
 }
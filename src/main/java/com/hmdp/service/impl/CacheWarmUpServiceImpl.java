@@ -0,0 +1,207 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.WarmUpProgress;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.ICacheWarmUpService;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 缓存预热：按主键游标分批从 MySQL 读取数据，通过 pipeline 批量写入 Redis，并按配置限速
+ */
+@Slf4j
+@Service
+public class CacheWarmUpServiceImpl implements ICacheWarmUpService, ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private IShopTypeService shopTypeService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.cache.warm-up.on-startup:false}")
+    private boolean onStartup;
+    @Value("${hmdp.cache.warm-up.batch-size:1000}")
+    private int batchSize;
+    @Value("${hmdp.cache.warm-up.rate-per-second:50000}")
+    private long ratePerSecond;
+    /**
+     * 店铺缓存的查询策略，预热写入的格式必须与之一致，否则查询时解码失败
+     */
+    @Value("${hmdp.shop.cache-mode:" + IShopService.CACHE_MODE_PASS_THROUGH + "}")
+    private String shopCacheMode;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong shops = new AtomicLong();
+    private final AtomicLong shopTypes = new AtomicLong();
+    private final AtomicLong vouchers = new AtomicLong();
+    private volatile String phase;
+    private volatile LocalDateTime startTime;
+    private volatile LocalDateTime endTime;
+    private volatile String errorMsg;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (onStartup) {
+            start();
+        }
+    }
+
+    @Override
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        shops.set(0);
+        shopTypes.set(0);
+        vouchers.set(0);
+        startTime = LocalDateTime.now();
+        endTime = null;
+        errorMsg = null;
+        executor.submit(() -> {
+            try {
+                warmUpShops();
+                warmUpShopTypes();
+                warmUpSeckillStock();
+                log.info("缓存预热完成，店铺：{}，店铺类型：{}，秒杀券：{}", shops.get(), shopTypes.get(), vouchers.get());
+            } catch (Exception e) {
+                errorMsg = e.getMessage();
+                log.error("缓存预热失败", e);
+            } finally {
+                phase = null;
+                endTime = LocalDateTime.now();
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public WarmUpProgress progress() {
+        WarmUpProgress progress = new WarmUpProgress();
+        progress.setRunning(running.get());
+        progress.setPhase(phase);
+        progress.setShops(shops.get());
+        progress.setShopTypes(shopTypes.get());
+        progress.setVouchers(vouchers.get());
+        progress.setStartTime(startTime);
+        progress.setEndTime(endTime);
+        progress.setErrorMsg(errorMsg);
+        return progress;
+    }
+
+    private void warmUpShops() throws InterruptedException {
+        phase = "shop";
+        long begin = System.currentTimeMillis();
+        long lastId = 0;
+        while (true) {
+            // 1.按主键游标读取一批，避免深分页
+            List<Shop> list = shopService.query()
+                    .gt("id", lastId).orderByAsc("id").last("LIMIT " + batchSize).list();
+            if (list.isEmpty()) {
+                return;
+            }
+            // 2.pipeline 批量写入
+            Map<String, Object> values = new HashMap<>(list.size() * 2);
+            for (Shop shop : list) {
+                values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+            }
+            if (IShopService.CACHE_MODE_LOGICAL_EXPIRE.equals(shopCacheMode)) {
+                cacheClient.setBatchWithLogicalExpire(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            } else if (IShopService.CACHE_MODE_EARLY_REFRESH.equals(shopCacheMode)) {
+                cacheClient.setBatchWithEarlyRefresh(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            } else {
+                cacheClient.setBatch(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+            }
+            lastId = list.get(list.size() - 1).getId();
+            log.debug("预热店铺缓存：{}", shops.addAndGet(list.size()));
+            // 3.限速
+            throttle(begin, shops.get());
+            if (list.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    private void warmUpShopTypes() {
+        phase = "shopType";
+        // 与 ShopTypeServiceImpl 使用相同的缓存格式
+        List<ShopType> list = shopTypeService.list();
+        if (list.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.opsForValue()
+                .set(CACHE_SHOP_TYPE_KEY, JSONUtil.toJsonStr(list), CACHE_SHOP_TYPE_TTL, TimeUnit.MINUTES);
+        shopTypes.set(list.size());
+    }
+
+    private void warmUpSeckillStock() throws InterruptedException {
+        phase = "voucher";
+        long begin = System.currentTimeMillis();
+        long lastId = 0;
+        while (true) {
+            // 只预热未结束的秒杀券
+            List<SeckillVoucher> list = seckillVoucherService.query()
+                    .gt("voucher_id", lastId).gt("end_time", LocalDateTime.now())
+                    .orderByAsc("voucher_id").last("LIMIT " + batchSize).list();
+            if (list.isEmpty()) {
+                return;
+            }
+            // 库存可能已经在扣减，只写入不存在的库存 key
+            seckillVoucherService.preload(list, false);
+            lastId = list.get(list.size() - 1).getVoucherId();
+            throttle(begin, vouchers.addAndGet(list.size()));
+            if (list.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 已处理数量超过限速时休眠，保证平均速率不超过 rate-per-second
+     */
+    private void throttle(long begin, long processed) throws InterruptedException {
+        long expectedMillis = processed * 1000 / ratePerSecond;
+        long elapsed = System.currentTimeMillis() - begin;
+        if (expectedMillis > elapsed) {
+            Thread.sleep(expectedMillis - elapsed);
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -1,10 +1,46 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.mapper.SeckillVoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SeckillKeys;
+import com.hmdp.utils.TransactionUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -17,4 +53,402 @@ import org.springframework.stereotype.Service;
 @Service
 public class SeckillVoucherServiceImpl extends ServiceImpl<SeckillVoucherMapper, SeckillVoucher> implements ISeckillVoucherService {
 
+    private static final DefaultRedisScript<Long> TIMEOUT_RESTORE_SCRIPT;
+
+    static {
+        TIMEOUT_RESTORE_SCRIPT = new DefaultRedisScript<>();
+        TIMEOUT_RESTORE_SCRIPT.setLocation(new ClassPathResource("order_timeout_restore.lua"));
+        TIMEOUT_RESTORE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 重新读取秒杀分片列表的间隔
+     */
+    @Value("${hmdp.order.shard-refresh-millis:5000}")
+    private long shardRefreshMillis;
+    /**
+     * 准入许可数与库存的比例，预热时按分片库存发放，归还库存时按归还数量追加
+     */
+    @Value("${hmdp.order.admission.permit-factor:1.2}")
+    private double permitFactor;
+
+    @Value("${hmdp.voucher.local.capacity:10000}")
+    private int localCapacity;
+    @Value("${hmdp.voucher.local.ttl-seconds:300}")
+    private long localTtlSeconds;
+
+    /**
+     * 秒杀券的库存分桶数，创建后不再变化，可以一直缓存
+     */
+    private final Map<Long, Integer> stockBuckets = new ConcurrentHashMap<>();
+
+    /**
+     * 全部秒杀分片的本地副本，订单消费者和超时取消按分片读取 stream 和 zset
+     */
+    private volatile List<String> shards = Collections.emptyList();
+    private volatile long shardsExpireAt;
+
+    /**
+     * 秒杀券信息的本地缓存，秒杀时的时间窗口校验不需要访问 Redis
+     */
+    private LRUCache<Long, SeckillVoucher> localCache;
+
+    @PostConstruct
+    private void init() {
+        localCache = CacheUtil.newLRUCache(localCapacity, TimeUnit.SECONDS.toMillis(localTtlSeconds));
+        // 任意节点修改秒杀券后通过缓存失效频道广播，各节点淘汰本地缓存
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String key = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (key.startsWith(CACHE_SECKILL_VOUCHER_KEY)) {
+                localCache.remove(Long.valueOf(key.substring(CACHE_SECKILL_VOUCHER_KEY.length())));
+            }
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    @Override
+    public void preload(Collection<SeckillVoucher> vouchers, boolean overwriteStock) {
+        // 1.未指定分桶数的（如预热），沿用 Redis 中已记录的分桶数
+        fillStockBuckets(vouchers);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (SeckillVoucher voucher : vouchers) {
+                // 2.每个分片的库存和时间窗口（毫秒时间戳）：库存均分到各个分片，余数从第一个分片开始各多分一个；
+                // 时间窗口每个分片保存一份，秒杀脚本只访问一个分片；分片登记到分片列表
+                int buckets = bucketsOf(voucher.getStockBuckets());
+                int stock = voucher.getStock();
+                Map<byte[], byte[]> window = new HashMap<>(4);
+                window.put(bytes("begin"), bytes(String.valueOf(toMillis(voucher.getBeginTime()))));
+                window.put(bytes("end"), bytes(String.valueOf(toMillis(voucher.getEndTime()))));
+                for (int i = 0; i < buckets; i++) {
+                    String shard = SeckillKeys.shard(voucher.getVoucherId(), i);
+                    byte[] stockKey = bytes(SeckillKeys.stock(shard));
+                    int shardStock = stock / buckets + (i < stock % buckets ? 1 : 0);
+                    byte[] value = bytes(String.valueOf(shardStock));
+                    byte[] permitKey = bytes(SeckillKeys.permit(shard));
+                    byte[] permits = bytes(String.valueOf(permitsOf(shardStock)));
+                    if (overwriteStock) {
+                        connection.stringCommands().set(stockKey, value);
+                        connection.stringCommands().set(permitKey, permits);
+                    } else {
+                        connection.stringCommands().setNX(stockKey, value);
+                        connection.stringCommands().setNX(permitKey, permits);
+                    }
+                    connection.hashCommands().hMSet(bytes(SeckillKeys.window(shard)), window);
+                    connection.setCommands().sAdd(bytes(SECKILL_SHARDS_KEY), bytes(shard));
+                }
+                // 3.秒杀券的时间窗口，分片数一并记录
+                Map<byte[], byte[]> meta = new HashMap<>(window);
+                meta.put(bytes("buckets"), bytes(String.valueOf(buckets)));
+                connection.hashCommands().hMSet(bytes(SECKILL_WINDOW_KEY + voucher.getVoucherId()), meta);
+            }
+            return null;
+        });
+        // 本节点立即重新读取分片列表
+        shardsExpireAt = 0;
+        // 4.秒杀券信息写入 Redis 和本地缓存
+        Map<String, SeckillVoucher> cache = new HashMap<>(vouchers.size() * 2);
+        for (SeckillVoucher voucher : vouchers) {
+            stockBuckets.put(voucher.getVoucherId(), bucketsOf(voucher.getStockBuckets()));
+            cache.put(CACHE_SECKILL_VOUCHER_KEY + voucher.getVoucherId(), voucher);
+            localCache.put(voucher.getVoucherId(), voucher);
+        }
+        cacheClient.setBatch(cache, CACHE_SECKILL_VOUCHER_TTL, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public SeckillVoucher queryCached(Long voucherId) {
+        SeckillVoucher voucher = localCache.get(voucherId, false);
+        if (voucher != null) {
+            return voucher;
+        }
+        voucher = cacheClient.queryWithPassThrough(CACHE_SECKILL_VOUCHER_KEY, voucherId, SeckillVoucher.class,
+                this::getById, CACHE_SECKILL_VOUCHER_TTL, TimeUnit.MINUTES);
+        if (voucher != null) {
+            localCache.put(voucherId, voucher);
+        }
+        return voucher;
+    }
+
+    @Override
+    @Transactional
+    public void updateWindow(Long voucherId, LocalDateTime beginTime, LocalDateTime endTime) {
+        // 1.更新数据库
+        boolean success = update().set("begin_time", beginTime).set("end_time", endTime)
+                .eq("voucher_id", voucherId).update();
+        if (!success) {
+            return;
+        }
+        // 2.事务提交后更新秒杀脚本使用的时间窗口（每个分片一份），再淘汰本地和 Redis 缓存并通知其他节点
+        Map<String, String> window = new HashMap<>(4);
+        window.put("begin", String.valueOf(toMillis(beginTime)));
+        window.put("end", String.valueOf(toMillis(endTime)));
+        TransactionUtils.afterCommit(() -> {
+            stringRedisTemplate.opsForHash().putAll(SECKILL_WINDOW_KEY + voucherId, window);
+            for (int i = 0, buckets = stockBuckets(voucherId); i < buckets; i++) {
+                stringRedisTemplate.opsForHash().putAll(SeckillKeys.window(SeckillKeys.shard(voucherId, i)), window);
+            }
+            evict(voucherId);
+        });
+    }
+
+    private void evict(Long voucherId) {
+        localCache.remove(voucherId);
+        cacheClient.delete(CACHE_SECKILL_VOUCHER_KEY + voucherId);
+    }
+
+    @Override
+    public int stockBuckets(Long voucherId) {
+        Integer buckets = stockBuckets.get(voucherId);
+        if (buckets != null) {
+            return buckets;
+        }
+        List<Object> window = stringRedisTemplate.opsForHash()
+                .multiGet(SECKILL_WINDOW_KEY + voucherId, Arrays.asList("begin", "buckets"));
+        if (window.get(0) == null) {
+            // 秒杀券不存在或尚未预热，不缓存，交给秒杀脚本判断
+            return 1;
+        }
+        buckets = window.get(1) == null ? 1 : Integer.parseInt(window.get(1).toString());
+        stockBuckets.put(voucherId, buckets);
+        return buckets;
+    }
+
+    @Override
+    public List<String> stockKeys(Long voucherId) {
+        return stockKeys(voucherId, stockBuckets(voucherId));
+    }
+
+    private static List<String> stockKeys(Long voucherId, int buckets) {
+        List<String> keys = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            keys.add(SeckillKeys.stock(SeckillKeys.shard(voucherId, i)));
+        }
+        return keys;
+    }
+
+    @Override
+    public Map<Long, Integer> queryRedisStock(Collection<Long> voucherIds) {
+        // 1.本地没有记录分片数的，一次 pipeline 读取；读不到的是尚未预热的秒杀券，按 1 个分片处理
+        List<Long> unknown = voucherIds.stream().filter(id -> !stockBuckets.containsKey(id))
+                .collect(Collectors.toList());
+        if (!unknown.isEmpty()) {
+            List<Object> windows = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Long voucherId : unknown) {
+                    connection.hashCommands().hMGet(bytes(SECKILL_WINDOW_KEY + voucherId),
+                            bytes("begin"), bytes("buckets"));
+                }
+                return null;
+            });
+            for (int i = 0; i < unknown.size(); i++) {
+                List<?> window = (List<?>) windows.get(i);
+                if (window.get(0) != null) {
+                    stockBuckets.put(unknown.get(i),
+                            window.get(1) == null ? 1 : Integer.parseInt(window.get(1).toString()));
+                }
+            }
+        }
+        // 2.一次 pipeline 读取全部库存 key
+        List<Long> ids = new ArrayList<>(voucherIds);
+        List<List<String>> keys = new ArrayList<>(ids.size());
+        for (Long voucherId : ids) {
+            keys.add(stockKeys(voucherId, stockBuckets.getOrDefault(voucherId, 1)));
+        }
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (List<String> voucherKeys : keys) {
+                for (String key : voucherKeys) {
+                    connection.stringCommands().get(bytes(key));
+                }
+            }
+            return null;
+        });
+        // 3.累加各分片库存，扣减到负数的分片按 0 计
+        Map<Long, Integer> stocks = new HashMap<>(ids.size() * 2);
+        int index = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            int stock = 0;
+            boolean found = false;
+            for (int j = 0; j < keys.get(i).size(); j++) {
+                Object value = values.get(index++);
+                if (value != null) {
+                    stock += Math.max(0, Integer.parseInt(value.toString()));
+                    found = true;
+                }
+            }
+            if (found) {
+                stocks.put(ids.get(i), stock);
+            }
+        }
+        return stocks;
+    }
+
+    @Override
+    public List<String> shards() {
+        if (System.currentTimeMillis() >= shardsExpireAt) {
+            Set<String> members = stringRedisTemplate.opsForSet().members(SECKILL_SHARDS_KEY);
+            shards = members == null ? Collections.emptyList() : new ArrayList<>(members);
+            shardsExpireAt = System.currentTimeMillis() + shardRefreshMillis;
+        }
+        return shards;
+    }
+
+    @Override
+    @Transactional
+    public void replenishStock(Long voucherId, int amount) {
+        // 1.数据库库存
+        boolean success = update().setSql("stock = stock + " + amount).eq("voucher_id", voucherId).update();
+        if (!success) {
+            return;
+        }
+        // 2.事务提交后再补充 Redis 库存并清除售罄标记，回滚时 Redis 不会多出库存
+        TransactionUtils.afterCommit(() -> restoreRedisStock(voucherId, amount));
+    }
+
+    @Override
+    public void restoreRedisStock(Long voucherId, int amount) {
+        // 1.Redis 库存，分桶时按预热的规则分到各个桶
+        List<String> keys = stockKeys(voucherId);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keys.size(); i++) {
+                long delta = amount / keys.size() + (i < amount % keys.size() ? 1 : 0);
+                if (delta > 0) {
+                    connection.stringCommands().incrBy(bytes(keys.get(i)), delta);
+                    connection.stringCommands().incrBy(
+                            bytes(SeckillKeys.permit(SeckillKeys.shard(voucherId, i))), permitsOf(delta));
+                }
+            }
+            return null;
+        });
+        // 2.库存快照已变化，淘汰缓存；通知所有节点（包括本节点）清除本地售罄标记
+        stockChanged(voucherId);
+    }
+
+    @Override
+    public int restoreCancelledOrders(String shard, List<String> members, Collection<Long> userIds) {
+        // 1.删除超时任务和归还库存在同一个脚本中完成，已归还过的订单不在 zset 中，不会重复归还
+        Long restored = stringRedisTemplate.execute(TIMEOUT_RESTORE_SCRIPT,
+                Arrays.asList(SeckillKeys.timeout(shard), SeckillKeys.stock(shard), SeckillKeys.permit(shard)),
+                args(String.valueOf(permitFactor), members));
+        // 2.清除下单用户标记，允许再次购买；标记在用户所属的分片，可能不是库存所在的分片
+        Long voucherId = SeckillKeys.voucherId(shard);
+        int buckets = stockBuckets(voucherId);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long userId : userIds) {
+                String home = SeckillKeys.shard(voucherId, SeckillKeys.homeBucket(userId, buckets));
+                connection.stringCommands().setBit(bytes(SeckillKeys.buyers(home)), userId, false);
+            }
+            return null;
+        });
+        // 3.淘汰缓存并清除各节点的本地售罄标记
+        if (restored != null && restored > 0) {
+            stockChanged(voucherId);
+        }
+        return restored == null ? 0 : restored.intValue();
+    }
+
+    private void stockChanged(Long voucherId) {
+        evict(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_RESET_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 秒杀结束后脚本不再访问分片；订单消息全部确认、超时任务全部处理完后，清理分片的下单用户 bitmap、准入许可、
+     * 时间窗口、订单 stream 和超时 zset 释放内存，并移出分片列表。库存 key 保留，供查询和补货使用
+     */
+    @Scheduled(fixedDelayString = "${hmdp.order.shard-sweep.interval-millis:600000}")
+    public void sweepShards() {
+        Set<String> members = stringRedisTemplate.opsForSet().members(SECKILL_SHARDS_KEY);
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+        // 1.已结束的秒杀券
+        Set<Long> ids = members.stream().map(SeckillKeys::voucherId).collect(Collectors.toSet());
+        Set<Long> ended = new HashSet<>(listObjs(new QueryWrapper<SeckillVoucher>().select("voucher_id")
+                .in("voucher_id", ids).lt("end_time", LocalDateTime.now()), id -> Long.valueOf(id.toString())));
+        // 2.逐个分片确认处理完毕后清理
+        for (String shard : members) {
+            if (!ended.contains(SeckillKeys.voucherId(shard)) || !isDrained(shard)) {
+                continue;
+            }
+            stringRedisTemplate.opsForSet().remove(SECKILL_SHARDS_KEY, shard);
+            // 同一分片的 key 在同一个槽位，UNLINK 在后台线程释放内存，大 bitmap 不会阻塞 Redis
+            stringRedisTemplate.unlink(Arrays.asList(SeckillKeys.buyers(shard), SeckillKeys.permit(shard),
+                    SeckillKeys.window(shard), SeckillKeys.stream(shard), SeckillKeys.timeout(shard)));
+        }
+    }
+
+    private boolean isDrained(String shard) {
+        // 1.超时任务全部处理完
+        Long scheduled = stringRedisTemplate.opsForZSet().zCard(SeckillKeys.timeout(shard));
+        if (scheduled != null && scheduled > 0) {
+            return false;
+        }
+        // 2.订单消息全部投递并确认
+        String stream = SeckillKeys.stream(shard);
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(stream))) {
+            return true;
+        }
+        StreamInfo.XInfoStream info = stringRedisTemplate.opsForStream().info(stream);
+        StreamInfo.XInfoGroups groups = stringRedisTemplate.opsForStream().groups(stream);
+        if (groups.isEmpty()) {
+            return info.streamLength() == 0;
+        }
+        return groups.stream().allMatch(group -> group.pendingCount() == 0
+                && info.lastGeneratedId().equals(group.lastDeliveredId()));
+    }
+
+    private void fillStockBuckets(Collection<SeckillVoucher> vouchers) {
+        List<SeckillVoucher> unknown = new ArrayList<>();
+        for (SeckillVoucher voucher : vouchers) {
+            if (voucher.getStockBuckets() == null) {
+                unknown.add(voucher);
+            }
+        }
+        if (unknown.isEmpty()) {
+            return;
+        }
+        List<Object> buckets = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (SeckillVoucher voucher : unknown) {
+                connection.hashCommands().hGet(bytes(SECKILL_WINDOW_KEY + voucher.getVoucherId()), bytes("buckets"));
+            }
+            return null;
+        });
+        for (int i = 0; i < unknown.size(); i++) {
+            Object value = buckets.get(i);
+            unknown.get(i).setStockBuckets(value == null ? 1 : Integer.parseInt(value.toString()));
+        }
+    }
+
+    /**
+     * 库存对应的准入许可数，多出的部分覆盖重复下单、未开始等失败请求占用的许可
+     */
+    private long permitsOf(long stock) {
+        return (long) Math.ceil(stock * permitFactor);
+    }
+
+    private static Object[] args(String first, List<String> rest) {
+        Object[] args = new Object[rest.size() + 1];
+        args[0] = first;
+        for (int i = 0; i < rest.size(); i++) {
+            args[i + 1] = rest.get(i);
+        }
+        return args;
+    }
+
+    private static int bucketsOf(Integer stockBuckets) {
+        return stockBuckets == null || stockBuckets < 1 ? 1 : stockBuckets;
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
 }
@@ -1,26 +1,28 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.ObjectUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.BloomFilter;
 import com.hmdp.utils.CacheClient;
-import com.hmdp.utils.RedisData;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -32,11 +34,58 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     private StringRedisTemplate stringRedisTemplate;
     @Resource
     private CacheClient cacheClient;
-
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 店铺缓存的查询策略，逻辑过期和概率提前刷新在缓存中保存 RedisData，预热时按同一策略写入
+     */
+    @Value("${hmdp.shop.cache-mode:" + CACHE_MODE_PASS_THROUGH + "}")
+    private String cacheMode;
+    @Value("${hmdp.shop.bloom.expected-insertions:1000000}")
+    private long bloomExpectedInsertions;
+    @Value("${hmdp.shop.bloom.fpp:0.01}")
+    private double bloomFpp;
+
+    /**
+     * 店铺id布隆过滤器，拦截不存在的id，避免穿透到 Redis 和数据库
+     */
+    private BloomFilter shopBloomFilter;
+
+    private static final int BLOOM_LOAD_BATCH_SIZE = 1000;
+
+    @PostConstruct
+    private void initShopBloomFilter() {
+        // 1.按当前数据量和配置创建过滤器，预留一倍增长空间
+        long shopCount = count();
+        BloomFilter filter = new BloomFilter(Math.max(bloomExpectedInsertions, shopCount * 2), bloomFpp);
+        // 2.先订阅新增店铺的广播，再加载存量数据，避免加载期间其他节点新增的店铺丢失
+        listenerContainer.addMessageListener((message, pattern) ->
+                        filter.put(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(SHOP_BLOOM_CHANNEL));
+        // 3.按id分批加载存量店铺id
+        long lastId = 0;
+        while (true) {
+            List<Object> ids = listObjs(new QueryWrapper<Shop>()
+                    .select("id").gt("id", lastId).orderByAsc("id").last("LIMIT " + BLOOM_LOAD_BATCH_SIZE));
+            for (Object id : ids) {
+                lastId = ((Number) id).longValue();
+                filter.put(lastId);
+            }
+            if (ids.size() < BLOOM_LOAD_BATCH_SIZE) {
+                break;
+            }
+        }
+        this.shopBloomFilter = filter;
+    }
 
     @Override
     public Result queryById(Long id) {
+        // 布隆过滤器判断店铺一定不存在，直接返回
+        if (id == null || !shopBloomFilter.mightContain(id)) {
+            return Result.fail("店铺不存在！");
+        }
+
         // 缓存穿透
         // Shop shop = queryByCachePenetrate(id);
 
@@ -46,17 +95,28 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 逻辑过期（需要提交缓存预热） 缓存击穿
         // Shop shop = queryByLogical(id);
 
-        // 解决缓存穿透
-        Shop shop = cacheClient
-                .queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
-
-        // 互斥锁解决缓存击穿
-        // Shop shop = cacheClient
-        //         .queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
-
-        // 逻辑过期解决缓存击穿
-        // Shop shop = cacheClient
-        //         .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+        Shop shop;
+        switch (cacheMode) {
+            case CACHE_MODE_MUTEX:
+                // 互斥锁解决缓存击穿
+                shop = cacheClient
+                        .queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+                break;
+            case CACHE_MODE_LOGICAL_EXPIRE:
+                // 逻辑过期解决缓存击穿，需要先预热
+                shop = cacheClient
+                        .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+                break;
+            case CACHE_MODE_EARLY_REFRESH:
+                // 概率提前刷新解决缓存击穿和到期抖动
+                shop = cacheClient
+                        .queryWithEarlyRefresh(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+                break;
+            default:
+                // 解决缓存穿透
+                shop = cacheClient
+                        .queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        }
 
         if (shop == null) {
             return Result.fail("店铺不存在！");
@@ -66,73 +126,15 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     }
 
     private Shop queryByLogical(Long id) {
-        // 通过redis查询数据
-        String cacheShop = stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY + id);
-        // 判断是否存在数据
-        if (StrUtil.isBlank(cacheShop)) {
-            // 不存在，直接返回
-            return null;
-        }
-        // 3.未过期，直接返回数据
-        RedisData data = JSONUtil.toBean(cacheShop, RedisData.class);
-        Shop shop = JSONUtil.toBean((JSONObject) data.getData(), Shop.class);
-        if (data.getExpireTime().isAfter(LocalDateTime.now())) {
-            return shop;
-        }
-        // 过期，尝试获取锁
-        boolean flag = tryLock(id);
-        // 获取成功，通过线程池异步进行数据的存储
-        if (flag) {
-            // 双重判定锁
-            cacheShop = stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY + id);
-            // 未过期，直接返回数据
-            data = JSONUtil.toBean(cacheShop, RedisData.class);
-            shop = JSONUtil.toBean((JSONObject) data.getData(), Shop.class);
-            if (data.getExpireTime().isAfter(LocalDateTime.now())) {
-                return shop;
-            }
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    saveDataToRedis(id, 10L);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    unlock(id);
-                }
-            });
-        }
-        return shop;
+        // 锁和重建都由 CacheClient 处理，与其他查询策略使用同一个由缓存 key 派生的锁
+        return cacheClient
+                .queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 10L, TimeUnit.SECONDS);
     }
 
     private Shop queryByMutex(Long id) {
-        // 通过redis查询数据
-        String cacheShop = stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY + id);
-        if (StrUtil.isNotBlank(cacheShop)) {
-            return JSONUtil.toBean(cacheShop, Shop.class);
-        }
-        Shop shop = null;
-        // 尝试获取锁
-        boolean flag = tryLock(id);
-        try {
-            // 没有获取锁
-            if (!flag) {
-                Thread.sleep(50);
-                return queryByMutex(id);
-            }
-            // 有获取锁
-            // 通过redis查询数据
-            cacheShop = stringRedisTemplate.opsForValue().get(CACHE_SHOP_KEY + id);
-            if (StrUtil.isNotBlank(cacheShop)) {
-                return JSONUtil.toBean(cacheShop, Shop.class);
-            }
-            shop = getById(id);
-            stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        } finally {
-            unlock(id);
-        }
-        return shop;
+        // 同一 JVM 内的并发未命中由 CacheClient 合并为一次加载，只有一个线程竞争互斥锁
+        return cacheClient
+                .queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
     private Shop queryByCachePenetrate(Long id) {
@@ -159,6 +161,16 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         return shop;
     }
 
+    @Override
+    public Result saveShop(Shop shop) {
+        // 写入数据库
+        save(shop);
+        // 加入本地布隆过滤器，并广播给其他节点
+        shopBloomFilter.put(shop.getId());
+        stringRedisTemplate.convertAndSend(SHOP_BLOOM_CHANNEL, shop.getId().toString());
+        return Result.ok(shop.getId());
+    }
+
     @Override
     @Transactional
     public Result updateShop(Shop shop) {
@@ -168,28 +180,13 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         // 更新店铺数据
         updateById(shop);
-        // 删除redis中的数据
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        // 删除redis中的数据，并广播淘汰各节点的本地缓存
+        cacheClient.delete(CACHE_SHOP_KEY + id);
         return Result.ok();
     }
 
-    // 加锁
-    private boolean tryLock(Long id) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_SHOP_KEY + id, String.valueOf(id), LOCK_SHOP_TTL, TimeUnit.SECONDS);
-        return BooleanUtil.isTrue(flag);
-    }
-
-    // 解锁
-    private void unlock(Long id) {
-        stringRedisTemplate.delete(LOCK_SHOP_KEY + id);
-    }
-
     // 保存数据
     public void saveDataToRedis(Long id, Long expireSeconds) {
-        Shop shop = getById(id);
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + id, getById(id), expireSeconds, TimeUnit.SECONDS);
     }
 }
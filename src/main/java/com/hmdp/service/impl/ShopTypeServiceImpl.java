@@ -8,6 +8,7 @@ import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheMetrics;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
@@ -23,15 +24,25 @@ public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> i
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheMetrics cacheMetrics;
 
     @Override
     public Result queryType() {
+        long begin = System.nanoTime();
         String cacheShopType = stringRedisTemplate.opsForValue().get(CACHE_SHOP_TYPE_KEY);
+        cacheMetrics.recordRedisFetch(CACHE_SHOP_TYPE_KEY, System.nanoTime() - begin);
         if (StrUtil.isNotBlank(cacheShopType)) {
+            cacheMetrics.hit(CACHE_SHOP_TYPE_KEY);
+            begin = System.nanoTime();
             List<ShopType> list = JSONUtil.toList(cacheShopType, ShopType.class);
+            cacheMetrics.recordDeserialize(CACHE_SHOP_TYPE_KEY, System.nanoTime() - begin);
             return Result.ok(list);
         }
+        cacheMetrics.miss(CACHE_SHOP_TYPE_KEY);
+        begin = System.nanoTime();
         List<ShopType> shopTypeList = list();
+        cacheMetrics.recordDbFallback(CACHE_SHOP_TYPE_KEY, System.nanoTime() - begin);
         if (CollUtil.isEmpty(shopTypeList)) {
             return Result.fail("未找到商品分类");
         }
@@ -0,0 +1,256 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.util.IdUtil;
+import com.hmdp.dto.StockDriftDTO;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IStockReconcileService;
+import com.hmdp.utils.SeckillKeys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.LOCK_STOCK_RECONCILE_KEY;
+import static com.hmdp.utils.SystemConstants.ORDER_STATUS_CANCELLED;
+
+/**
+ * 秒杀库存对账：按主键分页读取进行中的秒杀券，比较 Redis 库存、数据库库存和订单数。
+ * 没有偏差时 Redis 库存 = 数据库库存 - (下单用户数 - 已落库订单数)，括号内是尚未落库的订单；
+ * 同一偏差连续两轮出现且在修正上限内时自动修正 Redis 库存，排除订单在途造成的瞬时偏差
+ */
+@Slf4j
+@Service
+public class StockReconcileServiceImpl implements IStockReconcileService {
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+
+    static {
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private VoucherOrderMapper voucherOrderMapper;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Value("${hmdp.order.reconcile.page-size:200}")
+    private int pageSize;
+    /**
+     * 是否自动修正 Redis 库存
+     */
+    @Value("${hmdp.order.reconcile.auto-correct:false}")
+    private boolean autoCorrect;
+    /**
+     * 单张秒杀券每轮最多修正的库存数，偏差更大时只告警，交给人工处理
+     */
+    @Value("${hmdp.order.reconcile.max-correction:10}")
+    private long maxCorrection;
+    @Value("${hmdp.order.reconcile.lock-seconds:300}")
+    private long lockSeconds;
+
+    /**
+     * 上一轮对账发现的偏差，秒杀券id -> 偏差
+     */
+    private final Map<Long, Long> lastDrifts = new ConcurrentHashMap<>();
+
+    private volatile List<StockDriftDTO> lastReport = Collections.emptyList();
+
+    private Counter consistent;
+    private Counter drifted;
+    private Counter corrected;
+
+    @PostConstruct
+    private void init() {
+        consistent = Counter.builder("seckill.stock.reconcile").tag("result", "consistent").register(meterRegistry);
+        drifted = Counter.builder("seckill.stock.reconcile").tag("result", "drift").register(meterRegistry);
+        corrected = Counter.builder("seckill.stock.reconcile").tag("result", "corrected").register(meterRegistry);
+        Gauge.builder("seckill.stock.drift.vouchers", this, s -> s.lastReport.size())
+                .description("最近一次对账存在偏差的秒杀券数")
+                .register(meterRegistry);
+        Gauge.builder("seckill.stock.drift.total", this,
+                        s -> s.lastReport.stream().mapToLong(d -> Math.abs(d.getDrift())).sum())
+                .description("最近一次对账的库存偏差绝对值之和")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${hmdp.order.reconcile.interval-millis:60000}")
+    public void scheduledReconcile() {
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("秒杀库存对账失败", e);
+        }
+    }
+
+    @Override
+    public List<StockDriftDTO> reconcile() {
+        // 1.多个节点同时对账会重复修正，同一时间只允许一个节点执行；
+        // 锁的值是本次对账的标识，对账超过锁时长后锁可能已被其他节点持有，释放时不能误删
+        String owner = IdUtil.fastSimpleUUID();
+        Boolean locked = stringRedisTemplate.opsForValue()
+                .setIfAbsent(LOCK_STOCK_RECONCILE_KEY, owner, lockSeconds, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return null;
+        }
+        try {
+            List<StockDriftDTO> report = new ArrayList<>();
+            Map<Long, Long> drifts = new HashMap<>();
+            // 2.按主键游标分页，只读取当前处于秒杀时间窗口内的秒杀券
+            LocalDateTime now = LocalDateTime.now();
+            long lastId = 0;
+            while (true) {
+                List<SeckillVoucher> page = seckillVoucherService.query()
+                        .select("voucher_id", "stock")
+                        .gt("voucher_id", lastId).le("begin_time", now).ge("end_time", now)
+                        .orderByAsc("voucher_id")
+                        .last("LIMIT " + pageSize)
+                        .list();
+                if (page.isEmpty()) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getVoucherId();
+                reconcilePage(page, report, drifts);
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+            lastDrifts.clear();
+            lastDrifts.putAll(drifts);
+            lastReport = report;
+            if (!report.isEmpty()) {
+                log.warn("秒杀库存对账发现偏差：{}", report);
+            }
+            return report;
+        } finally {
+            stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(LOCK_STOCK_RECONCILE_KEY), owner);
+        }
+    }
+
+    @Override
+    public List<StockDriftDTO> lastReport() {
+        return lastReport;
+    }
+
+    private void reconcilePage(List<SeckillVoucher> page, List<StockDriftDTO> report, Map<Long, Long> drifts) {
+        // 1.数据库中未取消的订单数
+        List<Long> ids = page.stream().map(SeckillVoucher::getVoucherId).collect(Collectors.toList());
+        Map<Long, Long> orders = new HashMap<>(ids.size() * 2);
+        for (Map<String, Object> row : voucherOrderMapper.countByVoucherIds(ids, ORDER_STATUS_CANCELLED)) {
+            orders.put(((Number) row.get("voucherId")).longValue(), ((Number) row.get("orders")).longValue());
+        }
+        // 2.pipeline 读取各个分片的库存和下单用户数
+        Map<Long, List<String>> stockKeys = new HashMap<>(ids.size() * 2);
+        for (Long id : ids) {
+            stockKeys.put(id, seckillVoucherService.stockKeys(id));
+        }
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long id : ids) {
+                for (String key : stockKeys.get(id)) {
+                    connection.stringCommands().get(bytes(key));
+                }
+                for (int i = 0; i < stockKeys.get(id).size(); i++) {
+                    connection.stringCommands().bitCount(bytes(SeckillKeys.buyers(SeckillKeys.shard(id, i))));
+                }
+            }
+            return null;
+        });
+        // 3.逐张比较
+        int index = 0;
+        for (SeckillVoucher voucher : page) {
+            Long id = voucher.getVoucherId();
+            List<String> keys = stockKeys.get(id);
+            long[] buckets = new long[keys.size()];
+            boolean preloaded = false;
+            for (int i = 0; i < keys.size(); i++) {
+                Object value = values.get(index++);
+                preloaded |= value != null;
+                buckets[i] = value == null ? 0 : Long.parseLong(value.toString());
+            }
+            long buyers = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                buyers += ((Number) values.get(index++)).longValue();
+            }
+            if (!preloaded) {
+                // 尚未预热到 Redis，不参与对账
+                continue;
+            }
+            long redisStock = 0;
+            for (long bucket : buckets) {
+                redisStock += bucket;
+            }
+            long dbOrders = orders.getOrDefault(id, 0L);
+            long drift = redisStock - (voucher.getStock() - (buyers - dbOrders));
+            if (drift == 0) {
+                consistent.increment();
+                continue;
+            }
+            drifted.increment();
+            drifts.put(id, drift);
+            StockDriftDTO dto = new StockDriftDTO();
+            dto.setVoucherId(id);
+            dto.setRedisStock(redisStock);
+            dto.setDbStock(voucher.getStock().longValue());
+            dto.setDbOrders(dbOrders);
+            dto.setBuyers(buyers);
+            dto.setDrift(drift);
+            dto.setCorrected(false);
+            // 4.连续两轮偏差相同，说明不是在途订单造成的，在上限内自动修正
+            if (autoCorrect && Math.abs(drift) <= maxCorrection && Long.valueOf(drift).equals(lastDrifts.get(id))) {
+                correct(id, keys, buckets, drift);
+                dto.setCorrected(true);
+                drifts.remove(id);
+                corrected.increment();
+            }
+            report.add(dto);
+        }
+    }
+
+    private void correct(Long voucherId, List<String> keys, long[] buckets, long drift) {
+        if (drift < 0) {
+            // Redis 少了库存，按补货规则补回，并通知各节点清除售罄标记
+            seckillVoucherService.restoreRedisStock(voucherId, (int) -drift);
+            return;
+        }
+        // Redis 多出库存，从剩余最多的桶中扣除
+        int max = 0;
+        for (int i = 1; i < buckets.length; i++) {
+            if (buckets[i] > buckets[max]) {
+                max = i;
+            }
+        }
+        stringRedisTemplate.opsForValue().decrement(keys.get(max), drift);
+        log.warn("秒杀券{}的 Redis 库存多出{}，已从{}中扣除", voucherId, drift, keys.get(max));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
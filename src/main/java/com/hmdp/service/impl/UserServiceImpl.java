@@ -14,9 +14,13 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.LoginSessionCache;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SignedTokenCodec;
+import com.hmdp.utils.TokenDenylist;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.connection.DataType;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -43,6 +47,19 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Autowired
     private StringRedisTemplate stringRedisTemplate;
+    @Autowired
+    private LoginSessionCache loginSessionCache;
+    @Autowired
+    private SignedTokenCodec signedTokenCodec;
+    @Autowired
+    private TokenDenylist tokenDenylist;
+
+    /**
+     * 登录令牌类型：session 令牌对应 Redis 中的会话 / signed 签名令牌携带用户信息，校验不访问 Redis；
+     * 拦截器同时识别两种令牌，切换后已签发的令牌仍然有效
+     */
+    @Value("${hmdp.login.token.mode:session}")
+    private String tokenMode;
 
     @Override
     public Result sendCode(String phone, HttpSession session) {
@@ -144,11 +161,16 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             user = SaveUser(loginForm);
         }
 
+        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
+        // 签名令牌模式，用户信息和过期时间签名后直接返回，不保存到 redis
+        if ("signed".equals(tokenMode)) {
+            return Result.ok(signedTokenCodec.encode(userDTO));
+        }
+
         // 保存用户信息到 redis中
         // 随机生成token，作为登录令牌
         String token = UUID.randomUUID().toString(true);
         // 将User对象转为HashMap存储
-        UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
         Map<String, Object> userMap = BeanUtil.beanToMap(userDTO, new HashMap<>(),
                 CopyOptions.create()
                         .setIgnoreNullValue(true)
@@ -165,6 +187,25 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(token);
     }
 
+    @Override
+    public Result logout(String token) {
+        if (StrUtil.isBlank(token)) {
+            return Result.ok();
+        }
+        // 签名令牌加入黑名单，保留到令牌过期
+        if (SignedTokenCodec.isSigned(token)) {
+            SignedTokenCodec.Claims claims = signedTokenCodec.decode(token);
+            if (claims != null) {
+                tokenDenylist.revoke(claims.getTokenId(), claims.getExpireAt());
+            }
+            return Result.ok();
+        }
+        // 删除redis中的会话，并通知各节点淘汰本地缓存
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        loginSessionCache.invalidateToken(token);
+        return Result.ok();
+    }
+
     private User SaveUser(LoginFormDTO loginForm) {
         User user = new User();
         user.setPhone(loginForm.getPhone());
@@ -1,5 +1,6 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
@@ -7,63 +8,629 @@ import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
-import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.SeckillKeys;
 import com.hmdp.utils.UserHolder;
+import com.hmdp.utils.VoucherOrderBatchWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands.XClaimOptions;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.ORDER_STATUS_CANCELLED;
+import static com.hmdp.utils.SystemConstants.ORDER_STATUS_UNPAID;
+
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
-    private RedisIdWorker redisIdWorker;
+    private IdGenerator idGenerator;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private MeterRegistry meterRegistry;
+    @Resource
+    private VoucherOrderBatchWriter voucherOrderBatchWriter;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 消费者线程数
+     */
+    @Value("${hmdp.order.stream.consumers:1}")
+    private int consumerCount;
+    /**
+     * 消费者名称前缀，重启后必须保持不变才能找回自己 pending-list 中的消息，默认使用主机名
+     */
+    @Value("${hmdp.order.stream.consumer-name:}")
+    private String consumerName;
+    /**
+     * 消息最多投递次数，超过后转入死信 stream
+     */
+    @Value("${hmdp.order.stream.max-deliveries:3}")
+    private int maxDeliveries;
+    /**
+     * 重新处理 pending-list 的间隔
+     */
+    @Value("${hmdp.order.stream.recovery-interval-seconds:30}")
+    private long recoveryIntervalSeconds;
+    /**
+     * 所有分片的 stream 都没有新消息时的等待时间
+     */
+    @Value("${hmdp.order.stream.poll-interval-millis:50}")
+    private long pollIntervalMillis;
+    /**
+     * 其他消费者 pending-list 中的消息闲置超过这个时长后由本消费者认领，必须大于正常处理一批消息的耗时
+     */
+    @Value("${hmdp.order.stream.claim-idle-seconds:60}")
+    private long claimIdleSeconds;
+    /**
+     * 每个分片 stream 保留的大约长度，必须大于可能积压的消息数，否则未消费的消息会被裁剪
+     */
+    @Value("${hmdp.order.stream.max-length:100000}")
+    private long streamMaxLength;
+    /**
+     * 本地售罄标记的有效期，补货通知丢失时最多在这段时间内误判为售罄
+     */
+    @Value("${hmdp.order.sold-out-ttl-seconds:60}")
+    private long soldOutTtlSeconds;
+    /**
+     * 下单后多久未支付自动取消
+     */
+    @Value("${hmdp.order.timeout.minutes:15}")
+    private long paymentTimeoutMinutes;
+
+    /**
+     * 本地售罄标记，秒杀券id -> 标记过期时间，命中时不访问 Redis 直接返回库存不足
+     */
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    /**
+     * 已创建消费者组的订单 stream
+     */
+    private final Set<String> groups = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 全部分片已投递未确认的消息数，消费者恢复时一次 pipeline 读取，指标直接使用，不再逐个分片查询
+     */
+    private volatile long pendingTotal;
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+
+    static {
+        SECKILL_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
+        SECKILL_SCRIPT.setResultType(Long.class);
+    }
+
+    private ExecutorService seckillOrderExecutor;
+
+    private volatile boolean running = true;
+
+    private Counter processedCounter;
+    private Counter failedCounter;
+    private Counter deadLetterCounter;
+
+    @PostConstruct
+    private void init() throws UnknownHostException {
+        // 1.注册吞吐和积压指标
+        processedCounter = Counter.builder("seckill.order.stream").tag("result", "processed").register(meterRegistry);
+        failedCounter = Counter.builder("seckill.order.stream").tag("result", "failed").register(meterRegistry);
+        deadLetterCounter = Counter.builder("seckill.order.stream").tag("result", "dead-letter").register(meterRegistry);
+        Gauge.builder("seckill.order.stream.pending", this, s -> s.pendingTotal)
+                .description("已投递但未确认的订单消息数，消费者每轮恢复时更新")
+                .register(meterRegistry);
+        Gauge.builder("seckill.order.stream.lag", this, s -> s.lagMillis())
+                .description("最早一条尚未投递的订单消息已等待的毫秒数，取各分片的最大值")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        // 2.订阅售罄和补货通知
+        listenerContainer.addMessageListener((message, pattern) ->
+                        markSoldOut(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+        listenerContainer.addMessageListener((message, pattern) ->
+                        soldOut.remove(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8))),
+                new ChannelTopic(SECKILL_SOLD_OUT_RESET_CHANNEL));
+        // 3.启动消费者，每个消费者轮流读取全部分片的 stream
+        String prefix = consumerName.isEmpty() ? InetAddress.getLocalHost().getHostName() : consumerName;
+        AtomicInteger index = new AtomicInteger();
+        seckillOrderExecutor = Executors.newFixedThreadPool(consumerCount,
+                r -> new Thread(r, "seckill-order-" + index.incrementAndGet()));
+        for (int i = 0; i < consumerCount; i++) {
+            Consumer consumer = Consumer.from(SECKILL_ORDER_GROUP, prefix + "-" + i);
+            seckillOrderExecutor.submit(() -> consume(consumer));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        running = false;
+        seckillOrderExecutor.shutdown();
+        seckillOrderExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 全部分片的订单 stream，新分片的消费者组在第一次读取前创建
+     */
+    private List<String> streams() {
+        List<String> shards = seckillVoucherService.shards();
+        List<String> streams = new ArrayList<>(shards.size());
+        for (String shard : shards) {
+            String stream = SeckillKeys.stream(shard);
+            if (!groups.contains(stream)) {
+                createGroupIfAbsent(stream);
+                groups.add(stream);
+            }
+            streams.add(stream);
+        }
+        return streams;
+    }
+
+    private void createGroupIfAbsent(String stream) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("XGROUP",
+                    bytes("CREATE"), bytes(stream), bytes(SECKILL_ORDER_GROUP), bytes("0"), bytes("MKSTREAM")));
+        } catch (Exception e) {
+            // 消费者组已存在
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    private void consume(Consumer consumer) {
+        // 启动时先处理上次未确认的消息
+        long nextRecovery = 0;
+        while (running) {
+            try {
+                List<String> streams = streams();
+                boolean recover = System.currentTimeMillis() >= nextRecovery;
+                if (recover) {
+                    nextRecovery = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(recoveryIntervalSeconds);
+                }
+                // 恢复时先一次读取全部分片的未确认消息数，只处理有未确认消息的分片
+                Map<String, Long> pending = recover ? pendingCounts(streams) : null;
+                int received = 0;
+                for (String stream : streams) {
+                    boolean recoverStream = recover && (pending == null || pending.getOrDefault(stream, 0L) > 0);
+                    received += consume(consumer, stream, recoverStream);
+                }
+                // 所有分片都没有新消息时等待一会儿
+                if (received == 0) {
+                    Thread.sleep(pollIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("读取订单消息异常", e);
+            }
+        }
+    }
+
+    private int consume(Consumer consumer, String stream, boolean recover) {
+        try {
+            if (recover) {
+                claimIdle(consumer, stream);
+                handlePendingList(consumer, stream);
+            }
+            // 1.读取新消息 XREADGROUP GROUP g1 c1 COUNT n STREAMS stream.orders:{券id:桶号} >
+            // 各分片可能位于不同的集群节点，逐个 stream 读取，不阻塞
+            List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                    consumer,
+                    StreamReadOptions.empty().count(voucherOrderBatchWriter.getMaxSize()),
+                    StreamOffset.create(stream, ReadOffset.lastConsumed())
+            );
+            if (list == null || list.isEmpty()) {
+                return 0;
+            }
+            // 2.交给组提交写入，成功后确认
+            handle(stream, list);
+            return list.size();
+        } catch (Exception e) {
+            // 分片被清理后重新预热时 stream 和消费者组已不存在，下次读取前重新创建
+            if (e.getMessage() != null && e.getMessage().contains("NOGROUP")) {
+                groups.remove(stream);
+            }
+            log.error("读取订单消息异常，stream：{}", stream, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 认领其他消费者 pending-list 中闲置过久的消息：消费者宕机或改名后不会再处理自己的消息，
+     * 认领后与本消费者的消息一起重新处理；JUSTID 不增加投递次数，投递次数只在重新读取时增加
+     */
+    private void claimIdle(Consumer consumer, String stream) {
+        Duration minIdle = Duration.ofSeconds(claimIdleSeconds);
+        long count = voucherOrderBatchWriter.getMaxSize();
+        Range<String> range = Range.unbounded();
+        while (running) {
+            // 1.XPENDING stream g1 start + count，逐页扫描整个消费者组
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(stream, SECKILL_ORDER_GROUP, range, count);
+            List<RecordId> idle = new ArrayList<>();
+            String lastId = null;
+            for (PendingMessage message : pending) {
+                lastId = message.getIdAsString();
+                if (!consumer.getName().equals(message.getConsumerName())
+                        && message.getElapsedTimeSinceLastDelivery().compareTo(minIdle) >= 0) {
+                    idle.add(message.getId());
+                }
+            }
+            // 2.XCLAIM 时 Redis 会再次检查闲置时间，其他消费者刚刚处理或认领的消息不会被抢走
+            if (!idle.isEmpty()) {
+                stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.streamCommands()
+                        .xClaimJustId(bytes(stream), SECKILL_ORDER_GROUP, consumer.getName(),
+                                XClaimOptions.minIdle(minIdle).ids(idle.toArray(new RecordId[0]))));
+                log.warn("认领闲置的订单消息 {} 条，stream：{}", idle.size(), stream);
+            }
+            if (pending.size() < count) {
+                return;
+            }
+            // 下一页从本页最后一条开始，闭区间会再返回这一条，只会被跳过或重复认领
+            range = Range.rightUnbounded(Range.Bound.inclusive(lastId));
+        }
+    }
+
+    /**
+     * 重新处理 pending-list 中已投递未确认的消息，投递次数超过上限的转入死信 stream
+     */
+    private void handlePendingList(Consumer consumer, String stream) {
+        String lastId = "0";
+        while (running) {
+            // 从 lastId 之后读取本消费者 pending-list 中的消息，每次读取都会增加投递次数
+            List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
+                    consumer,
+                    StreamReadOptions.empty().count(voucherOrderBatchWriter.getMaxSize()),
+                    StreamOffset.create(stream, ReadOffset.from(lastId))
+            );
+            if (list == null || list.isEmpty()) {
+                return;
+            }
+            Map<String, Long> deliveries = deliveryCounts(stream, consumer, list);
+            List<MapRecord<String, Object, Object>> retries = new ArrayList<>(list.size());
+            for (MapRecord<String, Object, Object> record : list) {
+                lastId = record.getId().getValue();
+                if (deliveries.getOrDefault(lastId, 0L) > maxDeliveries) {
+                    deadLetter(stream, record);
+                } else {
+                    retries.add(record);
+                }
+            }
+            if (!retries.isEmpty()) {
+                handle(stream, retries);
+            }
+        }
+    }
+
+    private void handle(String stream, List<MapRecord<String, Object, Object>> records) {
+        // 1.全部提交给组提交写入器，与其他消费者的订单合并成批
+        List<CompletableFuture<Void>> futures = new ArrayList<>(records.size());
+        for (MapRecord<String, Object, Object> record : records) {
+            VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+            futures.add(voucherOrderBatchWriter.submit(voucherOrder));
+        }
+        // 2.落库成功的才确认，失败的消息留在 pending-list 等待重试
+        List<RecordId> acked = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            RecordId id = records.get(i).getId();
+            try {
+                futures.get(i).join();
+                acked.add(id);
+            } catch (Exception e) {
+                failedCounter.increment();
+                log.error("订单落库失败，消息id：{}", id, e);
+            }
+        }
+        if (!acked.isEmpty()) {
+            stringRedisTemplate.opsForStream().acknowledge(stream, SECKILL_ORDER_GROUP,
+                    acked.toArray(new RecordId[0]));
+            processedCounter.increment(acked.size());
+        }
+    }
+
+    /**
+     * 一次 XPENDING 读取这批消息的投递次数：消息按id递增排列且都在本消费者的 pending-list 中，首尾之间正好是这批消息
+     */
+    private Map<String, Long> deliveryCounts(String stream, Consumer consumer,
+                                             List<MapRecord<String, Object, Object>> records) {
+        String first = records.get(0).getId().getValue();
+        String last = records.get(records.size() - 1).getId().getValue();
+        PendingMessages pending = stringRedisTemplate.opsForStream()
+                .pending(stream, consumer, Range.closed(first, last), (long) records.size());
+        Map<String, Long> counts = new HashMap<>(records.size() * 2);
+        for (PendingMessage message : pending) {
+            counts.put(message.getIdAsString(), message.getTotalDeliveryCount());
+        }
+        return counts;
+    }
+
+    private void deadLetter(String stream, MapRecord<String, Object, Object> record) {
+        Map<Object, Object> value = new HashMap<>(record.getValue());
+        value.put("sourceStream", stream);
+        value.put("sourceId", record.getId().getValue());
+        stringRedisTemplate.opsForStream().add(SECKILL_ORDER_DEAD_LETTER_STREAM, value);
+        stringRedisTemplate.opsForStream().acknowledge(stream, SECKILL_ORDER_GROUP, record.getId());
+        deadLetterCounter.increment();
+        log.error("订单消息超过最大投递次数，已转入死信：{}", value);
+    }
+
+    /**
+     * 一次 pipeline 读取全部分片消费者组的未确认消息数，并更新指标
+     *
+     * @return stream -> 未确认消息数；读取失败时返回 null，由调用方逐个分片处理
+     */
+    private Map<String, Long> pendingCounts(List<String> streams) {
+        List<Object> summaries;
+        try {
+            summaries = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (String stream : streams) {
+                    connection.streamCommands().xPending(bytes(stream), SECKILL_ORDER_GROUP);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("读取订单消息积压失败", e);
+            return null;
+        }
+        Map<String, Long> counts = new HashMap<>(streams.size() * 2);
+        long total = 0;
+        for (int i = 0; i < streams.size(); i++) {
+            PendingMessagesSummary summary = (PendingMessagesSummary) summaries.get(i);
+            long count = summary == null ? 0 : summary.getTotalPendingMessages();
+            counts.put(streams.get(i), count);
+            total += count;
+        }
+        pendingTotal = total;
+        return counts;
+    }
+
+    private double lagMillis() {
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        for (String stream : groups) {
+            // 1.XINFO GROUPS 读取消费者组最后投递的消息id
+            StreamInfo.XInfoGroup group = stringRedisTemplate.opsForStream().groups(stream).stream()
+                    .filter(g -> SECKILL_ORDER_GROUP.equals(g.groupName()))
+                    .findFirst().orElse(null);
+            if (group == null) {
+                continue;
+            }
+            // 2.其后的第一条消息就是最早一条尚未投递的消息，消息id的前半部分是写入时间
+            String lastDelivered = group.lastDeliveredId();
+            List<MapRecord<String, Object, Object>> next = stringRedisTemplate.opsForStream().range(stream,
+                    Range.rightUnbounded(Range.Bound.inclusive(lastDelivered)), Limit.limit().count(2));
+            for (MapRecord<String, Object, Object> record : next) {
+                if (!record.getId().getValue().equals(lastDelivered)) {
+                    lag = Math.max(lag, now - record.getId().getTimestamp());
+                    break;
+                }
+            }
+        }
+        return lag;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void markSoldOut(Long voucherId) {
+        soldOut.put(voucherId, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(soldOutTtlSeconds));
+    }
+
+    private boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOut.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt < System.currentTimeMillis()) {
+            // 标记过期，放行一次请求到 Redis 重新确认
+            soldOut.remove(voucherId, expireAt);
+            return false;
+        }
+        return true;
+    }
 
     @Override
-    @Transactional
     public Result seckillVoucher(Long voucherId) {
-        // 1.查询优惠券
-        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
-        // 2.判断秒杀是否开始
-        if (voucher.getBeginTime().isAfter(LocalDateTime.now())) {
-            // 尚未开始
+        // 1.本地已标记售罄，不访问 Redis 直接返回
+        if (isSoldOut(voucherId)) {
+            return Result.fail("库存不足！");
+        }
+        // 2.使用缓存的秒杀券信息校验时间窗口，脚本中仍会以 Redis 中的时间窗口为准再次校验
+        SeckillVoucher voucher = seckillVoucherService.queryCached(voucherId);
+        if (voucher == null) {
+            return Result.fail("秒杀券不存在！");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (now.isBefore(voucher.getBeginTime())) {
             return Result.fail("秒杀尚未开始！");
         }
-        // 3.判断秒杀是否已经结束
-        if (voucher.getEndTime().isBefore(LocalDateTime.now())) {
-            // 尚未开始
+        if (now.isAfter(voucher.getEndTime())) {
             return Result.fail("秒杀已经结束！");
         }
-        // 4.判断库存是否充足
-        if (voucher.getStock() < 1) {
-            // 库存不足
-            return Result.fail("库存不足！");
+        Long userId = UserHolder.getUser().getId();
+        long orderId = idGenerator.nextId("order");
+        long nowMillis = System.currentTimeMillis();
+        long deadline = nowMillis + TimeUnit.MINUTES.toMillis(paymentTimeoutMinutes);
+        // 3.从用户所属的分片开始，当前分片售罄时依次借用其余分片的库存，全部售罄才算库存不足；
+        // 下单标记只记录在所属分片，借用前先在所属分片占用标记，保证一人一单
+        int buckets = seckillVoucherService.stockBuckets(voucherId);
+        int home = SeckillKeys.homeBucket(userId, buckets);
+        Long result = null;
+        boolean reserved = false;
+        for (int i = 0; i < buckets; i++) {
+            // 4.执行lua脚本，在一个分片内原子地校验时间窗口和库存、预扣库存、记录下单用户、把订单写入 stream 并登记支付超时
+            String shard = SeckillKeys.shard(voucherId, (home + i) % buckets);
+            String buyerMode = i > 0 ? "0" : buckets > 1 ? "2" : "1";
+            result = stringRedisTemplate.execute(
+                    SECKILL_SCRIPT,
+                    Arrays.asList(SeckillKeys.stock(shard), SeckillKeys.window(shard), SeckillKeys.buyers(shard),
+                            SeckillKeys.stream(shard), SeckillKeys.timeout(shard)),
+                    userId.toString(), String.valueOf(orderId), String.valueOf(nowMillis),
+                    voucherId.toString(), String.valueOf(deadline), buyerMode, String.valueOf(streamMaxLength)
+            );
+            if (result == null || result != 1) {
+                break;
+            }
+            reserved = buckets > 1;
+        }
+        if (reserved && (result == null || result != 0)) {
+            // 借用失败，清除在所属分片占用的下单标记
+            stringRedisTemplate.opsForValue().setBit(
+                    SeckillKeys.buyers(SeckillKeys.shard(voucherId, home)), userId, false);
+        }
+        // 5.判断结果
+        int r = result == null ? 5 : result.intValue();
+        switch (r) {
+            case 0:
+                // 6.有购买资格，订单已进入 stream，由消费者异步落库
+                return Result.ok(orderId);
+            case 1:
+                // 所有桶都已售罄，标记本地并通知其他节点
+                markSoldOut(voucherId);
+                stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId.toString());
+                return Result.fail("库存不足！");
+            case 2:
+                return Result.fail("不能重复下单！");
+            case 3:
+                return Result.fail("秒杀尚未开始！");
+            case 4:
+                return Result.fail("秒杀已经结束！");
+            default:
+                return Result.fail("秒杀券不存在！");
         }
-        //5，扣减库存
+    }
+
+    @Override
+    @Transactional
+    public void createVoucherOrder(VoucherOrder voucherOrder) {
+        // 1.消息可能重复投递，订单已存在则直接返回
+        if (getById(voucherOrder.getId()) != null) {
+            return;
+        }
+        // 2.扣减库存
         boolean success = seckillVoucherService.update()
-                .setSql("stock= stock -1")
-                .eq("voucher_id", voucherId).gt("stock", 0)
+                .setSql("stock = stock - 1")
+                .eq("voucher_id", voucherOrder.getVoucherId()).gt("stock", 0)
                 .update();
         if (!success) {
-            //扣减库存
-            return Result.fail("库存不足！");
+            // 抛出异常，消息留在 pending-list 重试，超过投递次数后转入死信，不能当作成功确认
+            throw new IllegalStateException("库存不足，订单未能落库：" + voucherOrder.getId());
         }
-        //6.创建订单
-        VoucherOrder voucherOrder = new VoucherOrder();
-        // 6.1.订单id
-        long orderId = redisIdWorker.nextId("order");
-        voucherOrder.setId(orderId);
-        // 6.2.用户id
-        Long userId = UserHolder.getUser().getId();
-        voucherOrder.setUserId(userId);
-        // 6.3.代金券id
-        voucherOrder.setVoucherId(voucherId);
+        // 3.创建订单
         save(voucherOrder);
+    }
 
-        return Result.ok(orderId);
+    @Override
+    @Transactional
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        // 1.消息可能重复投递，过滤掉已经落库的订单
+        Set<Long> existing = listByIds(voucherOrders.stream().map(VoucherOrder::getId).collect(Collectors.toList()))
+                .stream().map(VoucherOrder::getId).collect(Collectors.toSet());
+        List<VoucherOrder> orders = voucherOrders.stream()
+                .filter(o -> !existing.contains(o.getId()))
+                .collect(Collectors.toList());
+        if (orders.isEmpty()) {
+            return;
+        }
+        // 2.按秒杀券汇总，每张券只扣减一次库存
+        Map<Long, Long> counts = orders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + entry.getValue())
+                    .eq("voucher_id", entry.getKey()).ge("stock", entry.getValue())
+                    .update();
+            if (!success) {
+                // 整批回滚，由写入器逐条重试找出库存不足的订单
+                throw new IllegalStateException("库存不足，秒杀券id：" + entry.getKey());
+            }
+        }
+        // 3.多行 INSERT 写入订单
+        baseMapper.insertBatch(orders);
+    }
+
+    @Override
+    @Transactional
+    public List<VoucherOrder> cancelUnpaidOrders(List<Long> orderIds) {
+        // 1.按主键锁定订单，与支付的状态更新互斥
+        List<VoucherOrder> orders = query()
+                .select("id", "user_id", "voucher_id", "status")
+                .in("id", orderIds)
+                .last("FOR UPDATE")
+                .list();
+        List<VoucherOrder> unpaid = orders.stream()
+                .filter(o -> Integer.valueOf(ORDER_STATUS_UNPAID).equals(o.getStatus()))
+                .collect(Collectors.toList());
+        if (unpaid.isEmpty()) {
+            return unpaid;
+        }
+        // 2.取消订单
+        LocalDateTime now = LocalDateTime.now();
+        update().set("status", ORDER_STATUS_CANCELLED).set("update_time", now)
+                .in("id", unpaid.stream().map(VoucherOrder::getId).collect(Collectors.toList()))
+                .eq("status", ORDER_STATUS_UNPAID)
+                .update();
+        unpaid.forEach(o -> o.setStatus(ORDER_STATUS_CANCELLED).setUpdateTime(now));
+        // 3.按秒杀券汇总归还数据库库存
+        Map<Long, Long> counts = unpaid.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+            seckillVoucherService.update()
+                    .setSql("stock = stock + " + entry.getValue())
+                    .eq("voucher_id", entry.getKey())
+                    .update();
+        }
+        return unpaid;
     }
 }
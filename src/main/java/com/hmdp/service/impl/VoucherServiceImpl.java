@@ -1,17 +1,29 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopVouchersDTO;
 import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.TransactionUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_VOUCHER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_VOUCHER_TTL;
 
 /**
  * <p>
@@ -26,15 +38,58 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private CacheClient cacheClient;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        // 1.查询缓存的优惠券列表，未命中时查询数据库并写入缓存
+        ShopVouchersDTO shopVouchers = cacheClient.queryWithPassThrough(CACHE_SHOP_VOUCHER_KEY, shopId,
+                ShopVouchersDTO.class, this::loadVouchersOfShop, CACHE_SHOP_VOUCHER_TTL, TimeUnit.MINUTES);
+        if (shopVouchers == null || shopVouchers.getVouchers() == null) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 2.用 Redis 中的实时库存覆盖缓存里的库存快照
+        List<Voucher> vouchers = overlayStock(shopVouchers.getVouchers());
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    private ShopVouchersDTO loadVouchersOfShop(Long shopId) {
+        ShopVouchersDTO shopVouchers = new ShopVouchersDTO();
+        shopVouchers.setVouchers(getBaseMapper().queryVoucherOfShop(shopId));
+        return shopVouchers;
+    }
+
+    /**
+     * 秒杀券的库存换成 Redis 中的实时库存，库存 key 不存在时保留快照；
+     * 缓存的对象可能被本地缓存共享，覆盖时复制一份，不修改缓存中的对象
+     */
+    private List<Voucher> overlayStock(List<Voucher> vouchers) {
+        // 普通券没有库存
+        List<Long> ids = vouchers.stream().filter(v -> v.getStock() != null).map(Voucher::getId)
+                .collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return vouchers;
+        }
+        Map<Long, Integer> stocks = seckillVoucherService.queryRedisStock(ids);
+        List<Voucher> result = new ArrayList<>(vouchers.size());
+        for (Voucher voucher : vouchers) {
+            Integer stock = stocks.get(voucher.getId());
+            if (stock != null && voucher.getStock() != null) {
+                voucher = BeanUtil.copyProperties(voucher, Voucher.class).setStock(stock);
+            }
+            result.add(voucher);
+        }
+        return result;
+    }
+
+    @Override
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
+        cacheClient.delete(CACHE_SHOP_VOUCHER_KEY + voucher.getShopId());
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -44,8 +99,46 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         SeckillVoucher seckillVoucher = new SeckillVoucher();
         seckillVoucher.setVoucherId(voucher.getId());
         seckillVoucher.setStock(voucher.getStock());
+        seckillVoucher.setStockBuckets(voucher.getStockBuckets());
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        // 事务提交后保存秒杀库存、时间窗口和秒杀券信息到Redis，并淘汰店铺的优惠券列表缓存；回滚时 Redis 不留下数据
+        TransactionUtils.afterCommit(() -> {
+            seckillVoucherService.preload(Collections.singletonList(seckillVoucher), true);
+            cacheClient.delete(CACHE_SHOP_VOUCHER_KEY + voucher.getShopId());
+        });
+    }
+
+    @Override
+    @Transactional
+    public Result updateVoucher(Voucher voucher) {
+        Long id = voucher.getId();
+        if (id == null) {
+            return Result.fail("优惠券id不能为空");
+        }
+        Voucher old = getById(id);
+        if (old == null) {
+            return Result.fail("优惠券不存在");
+        }
+        // 1.更新优惠券
+        updateById(voucher);
+        // 2.秒杀券修改了时间窗口，同步秒杀信息并淘汰秒杀券缓存；库存通过补货接口修改
+        if (voucher.getBeginTime() != null || voucher.getEndTime() != null) {
+            SeckillVoucher seckillVoucher = seckillVoucherService.getById(id);
+            if (seckillVoucher != null) {
+                seckillVoucherService.updateWindow(id,
+                        voucher.getBeginTime() != null ? voucher.getBeginTime() : seckillVoucher.getBeginTime(),
+                        voucher.getEndTime() != null ? voucher.getEndTime() : seckillVoucher.getEndTime());
+            }
+        }
+        // 3.事务提交后淘汰店铺的优惠券列表缓存，店铺变更时新旧店铺都要淘汰
+        TransactionUtils.afterCommit(() -> {
+            cacheClient.delete(CACHE_SHOP_VOUCHER_KEY + old.getShopId());
+            if (voucher.getShopId() != null && !voucher.getShopId().equals(old.getShopId())) {
+                cacheClient.delete(CACHE_SHOP_VOUCHER_KEY + voucher.getShopId());
+            }
+        });
+        return Result.ok();
     }
 }
@@ -0,0 +1,253 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.ReflectUtil;
+import cn.hutool.json.JSONUtil;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑二进制编解码器，按字段名排序后依次写入字段值。
+ * <p>
+ * 格式：版本号(1字节) [逻辑过期时间(8字节) [重建耗时(8字节)]] 字段签名(4字节) 字段...；
+ * 版本 1 的逻辑过期数据不含重建耗时，版本 2 起包含。
+ * 版本号取值不可能出现在 JSON 首字节，读取时据此和 JSON 数据区分。
+ * 字段签名由字段名和类型计算，实体类结构变化后旧数据解码失败，按缓存未命中处理。
+ */
+@Component
+@Order(0)
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final byte VERSION_1 = 0x01;
+    public static final byte VERSION_2 = 0x02;
+
+    private final Map<Class<?>, ClassSchema> schemas = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return "binary";
+    }
+
+    @Override
+    public boolean canDecode(byte[] bytes) {
+        return bytes.length > 0 && (bytes[0] == VERSION_1 || bytes[0] == VERSION_2);
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeByte(VERSION_1);
+            writeObject(out, value);
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存序列化失败", e);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            checkVersion(in.readByte());
+            return readObject(in, type);
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存反序列化失败", e);
+        }
+    }
+
+    @Override
+    public byte[] encodeRedisData(RedisData redisData) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.writeByte(VERSION_2);
+            out.writeLong(redisData.getExpireTime().toInstant(ZoneOffset.UTC).toEpochMilli());
+            out.writeLong(redisData.getDelta() == null ? 0 : redisData.getDelta());
+            writeObject(out, redisData.getData());
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存序列化失败", e);
+        }
+        return bos.toByteArray();
+    }
+
+    @Override
+    public <T> RedisData decodeRedisData(byte[] bytes, Class<T> type) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            byte version = in.readByte();
+            checkVersion(version);
+            RedisData redisData = new RedisData();
+            redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(in.readLong()), ZoneOffset.UTC));
+            if (version >= VERSION_2) {
+                redisData.setDelta(in.readLong());
+            }
+            redisData.setData(readObject(in, type));
+            return redisData;
+        } catch (IOException e) {
+            throw new IllegalStateException("缓存反序列化失败", e);
+        }
+    }
+
+    private void checkVersion(byte version) {
+        if (version != VERSION_1 && version != VERSION_2) {
+            throw new IllegalStateException("不支持的缓存格式版本：" + version);
+        }
+    }
+
+    private void writeObject(DataOutputStream out, Object value) throws IOException {
+        ClassSchema schema = schemaOf(value.getClass());
+        out.writeInt(schema.signature);
+        for (Field field : schema.fields) {
+            Object fieldValue;
+            try {
+                fieldValue = field.get(value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            if (fieldValue == null) {
+                out.writeBoolean(false);
+                continue;
+            }
+            out.writeBoolean(true);
+            writeValue(out, field.getType(), fieldValue);
+        }
+    }
+
+    private <T> T readObject(DataInputStream in, Class<T> type) throws IOException {
+        ClassSchema schema = schemaOf(type);
+        int signature = in.readInt();
+        if (signature != schema.signature) {
+            throw new IllegalStateException("缓存字段签名不匹配：" + type.getName());
+        }
+        T instance = ReflectUtil.newInstance(type);
+        for (Field field : schema.fields) {
+            if (!in.readBoolean()) {
+                continue;
+            }
+            try {
+                field.set(instance, readValue(in, field.getType(), field.getGenericType()));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return instance;
+    }
+
+    private void writeValue(DataOutputStream out, Class<?> type, Object value) throws IOException {
+        if (type == Long.class || type == long.class) {
+            out.writeLong((Long) value);
+        } else if (type == Integer.class || type == int.class) {
+            out.writeInt((Integer) value);
+        } else if (type == Short.class || type == short.class) {
+            out.writeShort((Short) value);
+        } else if (type == Byte.class || type == byte.class) {
+            out.writeByte((Byte) value);
+        } else if (type == Boolean.class || type == boolean.class) {
+            out.writeBoolean((Boolean) value);
+        } else if (type == Double.class || type == double.class) {
+            out.writeDouble((Double) value);
+        } else if (type == Float.class || type == float.class) {
+            out.writeFloat((Float) value);
+        } else if (type == String.class) {
+            writeString(out, (String) value);
+        } else if (type == LocalDateTime.class) {
+            LocalDateTime time = (LocalDateTime) value;
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        } else if (type == LocalDate.class) {
+            out.writeLong(((LocalDate) value).toEpochDay());
+        } else if (type == BigDecimal.class) {
+            writeString(out, value.toString());
+        } else {
+            // 其他类型退化为 JSON 字符串
+            writeString(out, JSONUtil.toJsonStr(value));
+        }
+    }
+
+    private Object readValue(DataInputStream in, Class<?> type, Type genericType) throws IOException {
+        if (type == Long.class || type == long.class) {
+            return in.readLong();
+        } else if (type == Integer.class || type == int.class) {
+            return in.readInt();
+        } else if (type == Short.class || type == short.class) {
+            return in.readShort();
+        } else if (type == Byte.class || type == byte.class) {
+            return in.readByte();
+        } else if (type == Boolean.class || type == boolean.class) {
+            return in.readBoolean();
+        } else if (type == Double.class || type == double.class) {
+            return in.readDouble();
+        } else if (type == Float.class || type == float.class) {
+            return in.readFloat();
+        } else if (type == String.class) {
+            return readString(in);
+        } else if (type == LocalDateTime.class) {
+            return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        } else if (type == LocalDate.class) {
+            return LocalDate.ofEpochDay(in.readLong());
+        } else if (type == BigDecimal.class) {
+            return new BigDecimal(readString(in));
+        } else {
+            // 按字段的泛型类型解析，List<Voucher> 等集合字段才能还原出元素类型
+            return JSONUtil.parse(readString(in)).toBean(genericType);
+        }
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ClassSchema schemaOf(Class<?> type) {
+        return schemas.computeIfAbsent(type, ClassSchema::new);
+    }
+
+    private static class ClassSchema {
+        private final List<Field> fields = new ArrayList<>();
+        private final int signature;
+
+        ClassSchema(Class<?> type) {
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            fields.sort(Comparator.comparing(Field::getName));
+            int hash = 17;
+            for (Field field : fields) {
+                hash = 31 * hash + field.getName().hashCode();
+                hash = 31 * hash + field.getType().getName().hashCode();
+            }
+            this.signature = hash;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 基于 long 位数组的进程内布隆过滤器，线程安全，只支持添加不支持删除
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashCount;
+
+    /**
+     * @param expectedInsertions 预计插入的元素数量
+     * @param fpp                期望的误判率，取值 (0, 1)
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expectedInsertions 必须大于0，fpp 必须在 (0, 1) 之间");
+        }
+        // m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+        long m = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.max(1, (m + 63) >>> 6);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words << 6;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(long value) {
+        long h1 = mix(value);
+        long h2 = mix(value ^ 0x9E3779B97F4A7C15L);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long old;
+            do {
+                old = bits.get(word);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, old, old | mask));
+        }
+    }
+
+    /**
+     * @return false 表示一定不存在；true 表示可能存在
+     */
+    public boolean mightContain(long value) {
+        long h1 = mix(value);
+        long h2 = mix(value ^ 0x9E3779B97F4A7C15L);
+        for (int i = 1; i <= hashCount; i++) {
+            long index = ((h1 + i * h2) & Long.MAX_VALUE) % bitSize;
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * MurmurHash3 的 fmix64，打散连续的自增id
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,35 +1,170 @@
 package com.hmdp.utils;
 
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.hmdp.utils.RedisConstants.*;
 
 @Slf4j
 @Component
-public class CacheClient {
+public class CacheClient implements MessageListener {
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    private final RedisTemplate<String, byte[]> byteRedisTemplate;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    private final CacheMetrics cacheMetrics;
+
+    private final CacheRebuildExecutor cacheRebuildExecutor;
+
+    /**
+     * 空值标记，用于解决缓存穿透
+     */
+    private static final byte[] NULL_VALUE = new byte[0];
+
+    /**
+     * 所有可用的编解码器，按 @Order 排序，读取时选择第一个能识别数据格式的
+     */
+    private final List<CacheCodec> codecs;
+
+    /**
+     * 写入使用的编解码器，由 hmdp.cache.codec 指定
+     */
+    private final CacheCodec writeCodec;
+
+    /**
+     * 进程内一级缓存，位于 Redis 之前，按容量和 TTL 淘汰；未开启时为 null
+     */
+    private final LRUCache<String, Object> localCache;
+
+    /**
+     * 正在进行的缓存重建，相同 key 的并发未命中等待同一个 future
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+    /**
+     * 概率提前刷新的系数，越大越倾向于提前刷新
+     */
+    private final double xfetchBeta;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate,
+                       RedisTemplate<String, byte[]> byteRedisTemplate,
+                       RedisMessageListenerContainer listenerContainer,
+                       HotKeyDetector hotKeyDetector,
+                       CacheMetrics cacheMetrics,
+                       CacheRebuildExecutor cacheRebuildExecutor,
+                       List<CacheCodec> codecs,
+                       @Value("${hmdp.cache.codec:json}") String codecName,
+                       @Value("${hmdp.cache.local.enabled:false}") boolean localEnabled,
+                       @Value("${hmdp.cache.local.capacity:10000}") int localCapacity,
+                       @Value("${hmdp.cache.local.ttl-seconds:60}") long localTtlSeconds,
+                       @Value("${hmdp.cache.xfetch.beta:1.0}") double xfetchBeta) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.byteRedisTemplate = byteRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.hotKeyDetector = hotKeyDetector;
+        this.cacheMetrics = cacheMetrics;
+        this.cacheRebuildExecutor = cacheRebuildExecutor;
+        this.codecs = codecs;
+        this.writeCodec = codecs.stream()
+                .filter(codec -> codec.name().equals(codecName))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("未知的缓存编解码器：" + codecName));
+        this.localCache = localEnabled
+                ? CacheUtil.newLRUCache(localCapacity, TimeUnit.SECONDS.toMillis(localTtlSeconds))
+                : null;
+        this.xfetchBeta = xfetchBeta;
+    }
+
+    @PostConstruct
+    private void subscribe() {
+        // 订阅缓存失效频道，其他节点删除缓存时同步淘汰本地一级缓存
+        listenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        evictLocal(key);
+    }
+
+    /**
+     * 删除缓存，并通过 Redis 发布订阅通知所有节点淘汰本地一级缓存
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        evictLocal(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    private void evictLocal(String key) {
+        hotKeyDetector.evict(key);
+        if (localCache != null) {
+            localCache.remove(key);
+        }
+    }
+
+    /**
+     * 依次查询本地热点缓存和一级缓存，每次读取都记录访问频率用于热点探测；一级缓存命中时也判断是否晋升
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R getLocal(String key) {
+        Object hot = hotKeyDetector.get(key);
+        if (hot != null) {
+            return (R) hot;
+        }
+        if (localCache == null) {
+            return null;
+        }
+        Object value = localCache.get(key, false);
+        hotKeyDetector.promoteIfHot(key, value);
+        return (R) value;
+    }
+
+    private void putLocal(String key, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (localCache != null) {
+            localCache.put(key, value);
+        }
+        hotKeyDetector.promoteIfHot(key, value);
     }
 
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        byteRedisTemplate.opsForValue().set(key, writeCodec.encode(value), time, unit);
     }
 
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
@@ -38,53 +173,275 @@ public class CacheClient {
         redisData.setData(value);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
         // 写入Redis
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        byteRedisTemplate.opsForValue().set(key, writeCodec.encodeRedisData(redisData));
+    }
+
+    /**
+     * 写入带重建耗时的逻辑过期数据，Redis 中的真实过期时间与逻辑过期时间一致，冷数据到期自然淘汰
+     *
+     * @param delta 本次从数据库重建的耗时，毫秒
+     */
+    public void setWithEarlyRefresh(String key, Object value, long delta, Long time, TimeUnit unit) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plus(unit.toMillis(time), ChronoUnit.MILLIS));
+        redisData.setDelta(delta);
+        byteRedisTemplate.opsForValue().set(key, writeCodec.encodeRedisData(redisData), time, unit);
+    }
+
+    /**
+     * 通过 pipeline 批量写入缓存
+     */
+    public void setBatch(Map<String, ?> values, Long time, TimeUnit unit) {
+        long seconds = Math.max(1, unit.toSeconds(time));
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) -> connection.stringCommands()
+                    .setEx(key.getBytes(StandardCharsets.UTF_8), seconds, writeCodec.encode(value)));
+            return null;
+        });
+    }
+
+    /**
+     * 通过 pipeline 批量写入供概率提前刷新读取的缓存，没有重建耗时，delta 记为 0
+     */
+    public void setBatchWithEarlyRefresh(Map<String, ?> values, Long time, TimeUnit unit) {
+        long seconds = Math.max(1, unit.toSeconds(time));
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(seconds);
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) -> {
+                RedisData redisData = new RedisData();
+                redisData.setData(value);
+                redisData.setExpireTime(expireTime);
+                redisData.setDelta(0L);
+                connection.stringCommands()
+                        .setEx(key.getBytes(StandardCharsets.UTF_8), seconds, writeCodec.encodeRedisData(redisData));
+            });
+            return null;
+        });
+    }
+
+    /**
+     * 通过 pipeline 批量写入逻辑过期缓存
+     */
+    public void setBatchWithLogicalExpire(Map<String, ?> values, Long time, TimeUnit unit) {
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            values.forEach((key, value) -> {
+                RedisData redisData = new RedisData();
+                redisData.setData(value);
+                redisData.setExpireTime(expireTime);
+                connection.stringCommands()
+                        .set(key.getBytes(StandardCharsets.UTF_8), writeCodec.encodeRedisData(redisData));
+            });
+            return null;
+        });
     }
 
+    private void setNull(String key) {
+        byteRedisTemplate.opsForValue().set(key, NULL_VALUE, CACHE_NULL_TTL, TimeUnit.MINUTES);
+    }
+
+    private CacheCodec codecOf(byte[] bytes) {
+        for (CacheCodec codec : codecs) {
+            if (codec.canDecode(bytes)) {
+                return codec;
+            }
+        }
+        throw new IllegalStateException("没有可用的缓存解码器");
+    }
+
+    /**
+     * 从 Redis 读取原始字节，并记录耗时
+     */
+    private byte[] fetch(String keyPrefix, String key) {
+        long begin = System.nanoTime();
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
+        cacheMetrics.recordRedisFetch(keyPrefix, System.nanoTime() - begin);
+        return bytes;
+    }
+
+    /**
+     * 按数据格式选择解码器；无法解码的数据（如实体结构已变化）按未命中处理，返回 null
+     */
+    private <R> R decode(String keyPrefix, String key, byte[] bytes, Class<R> type) {
+        long begin = System.nanoTime();
+        try {
+            return codecOf(bytes).decode(bytes, type);
+        } catch (RuntimeException e) {
+            log.warn("缓存解码失败，按未命中处理，key={}", key, e);
+            return null;
+        } finally {
+            cacheMetrics.recordDeserialize(keyPrefix, System.nanoTime() - begin);
+        }
+    }
+
+    private RedisData decodeRedisData(String keyPrefix, String key, byte[] bytes, Class<?> type) {
+        long begin = System.nanoTime();
+        try {
+            return codecOf(bytes).decodeRedisData(bytes, type);
+        } catch (RuntimeException e) {
+            log.warn("缓存解码失败，按未命中处理，key={}", key, e);
+            return null;
+        } finally {
+            cacheMetrics.recordDeserialize(keyPrefix, System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * 查询数据库，并记录耗时
+     */
+    private <R> R loadFromDb(String keyPrefix, Supplier<R> dbFallback) {
+        long begin = System.nanoTime();
+        try {
+            return dbFallback.get();
+        } finally {
+            cacheMetrics.recordDbFallback(keyPrefix, System.nanoTime() - begin);
+        }
+    }
 
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type,
                                           Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 0.先查本地一级缓存
+        R local = getLocal(key);
+        if (local != null) {
+            cacheMetrics.localHit(keyPrefix);
+            return local;
+        }
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = fetch(keyPrefix, key);
         // 2.判断是否存在
-        if (StrUtil.isNotBlank(json)) {
-            // 3.存在，直接返回
-            return JSONUtil.toBean(json, type);
-        }
-        // 判断命中的是否是空值
-        if (json != null) {
-            // 返回一个错误信息
+        if (bytes != null && bytes.length > 0) {
+            // 3.存在，写入本地缓存并返回
+            R r = decode(keyPrefix, key, bytes, type);
+            if (r != null) {
+                cacheMetrics.hit(keyPrefix);
+                putLocal(key, r);
+                return r;
+            }
+        } else if (bytes != null) {
+            // 命中的是空值，返回一个错误信息
+            cacheMetrics.nullHit(keyPrefix);
             return null;
         }
+        cacheMetrics.miss(keyPrefix);
 
         // 4.不存在，根据id查询数据库
-        R r = dbFallback.apply(id);
+        R r = loadFromDb(keyPrefix, () -> dbFallback.apply(id));
         // 5.不存在，返回错误
         if (r == null) {
             // 将空值写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            setNull(key);
             // 返回错误信息
             return null;
         }
         // 6.存在，写入redis
         this.set(key, r, time, unit);
+        putLocal(key, r);
         return r;
     }
 
+    /**
+     * 批量查询：一次 MGET 查 Redis，未命中的一次性交给 dbFallback 查询数据库，再通过 pipeline 批量写回
+     *
+     * @param dbFallback 根据未命中的 id 集合批量查询，返回 id 到实体的映射，不存在的 id 不放入映射
+     * @return id 到实体的映射，不存在的 id 不包含在结果中
+     */
+    public <R, ID> Map<ID, R> queryBatch(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                         Function<Collection<ID>, Map<ID, R>> dbFallback, Long time, TimeUnit unit) {
+        Map<ID, R> result = new HashMap<>(ids.size() * 2);
+        // 1.先查本地一级缓存
+        List<ID> remoteIds = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            R local = getLocal(keyPrefix + id);
+            if (local != null) {
+                cacheMetrics.localHit(keyPrefix);
+                result.put(id, local);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+        // 2.一次 MGET 查询 Redis
+        List<String> keys = new ArrayList<>(remoteIds.size());
+        for (ID id : remoteIds) {
+            keys.add(keyPrefix + id);
+        }
+        long begin = System.nanoTime();
+        List<byte[]> values = byteRedisTemplate.opsForValue().multiGet(keys);
+        cacheMetrics.recordRedisFetch(keyPrefix, System.nanoTime() - begin);
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            byte[] bytes = values == null ? null : values.get(i);
+            if (bytes != null && bytes.length == 0) {
+                // 命中空值，不再查询数据库
+                cacheMetrics.nullHit(keyPrefix);
+                continue;
+            }
+            R r = bytes == null ? null : decode(keyPrefix, keys.get(i), bytes, type);
+            if (r == null) {
+                cacheMetrics.miss(keyPrefix);
+                missIds.add(remoteIds.get(i));
+                continue;
+            }
+            cacheMetrics.hit(keyPrefix);
+            result.put(remoteIds.get(i), r);
+            putLocal(keys.get(i), r);
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        // 3.未命中的 id 一次性查询数据库
+        Map<ID, R> loaded = loadFromDb(keyPrefix, () -> dbFallback.apply(missIds));
+        // 4.通过 pipeline 一次性写回 Redis，数据库中不存在的写入空值
+        long seconds = Math.max(1, unit.toSeconds(time));
+        long nullSeconds = TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL);
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                byte[] key = (keyPrefix + id).getBytes(StandardCharsets.UTF_8);
+                R r = loaded.get(id);
+                if (r == null) {
+                    connection.stringCommands().setEx(key, nullSeconds, NULL_VALUE);
+                } else {
+                    connection.stringCommands().setEx(key, seconds, writeCodec.encode(r));
+                }
+            }
+            return null;
+        });
+        for (ID id : missIds) {
+            R r = loaded.get(id);
+            if (r != null) {
+                result.put(id, r);
+                putLocal(keyPrefix + id, r);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
     public <R, ID> R queryWithLogicalExpire(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 需要读取 Redis 中的过期时间，不经过本地缓存，只记录访问频率
+        hotKeyDetector.record(key);
         // 1.从redis查询商铺缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = fetch(keyPrefix, key);
         // 2.判断是否存在
-        if (StrUtil.isBlank(json)) {
-            // 3.存在，直接返回
+        if (bytes == null || bytes.length == 0) {
+            // 3.不存在，直接返回
+            cacheMetrics.miss(keyPrefix);
             return null;
         }
-        // 4.命中，需要先把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        // 4.命中，反序列化为对象
+        RedisData redisData = decodeRedisData(keyPrefix, key, bytes, type);
+        if (redisData == null) {
+            cacheMetrics.miss(keyPrefix);
+            return null;
+        }
+        cacheMetrics.hit(keyPrefix);
+        R r = (R) redisData.getData();
         LocalDateTime expireTime = redisData.getExpireTime();
         // 5.判断是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
@@ -94,87 +451,232 @@ public class CacheClient {
         // 5.2.已过期，需要缓存重建
         // 6.缓存重建
         // 6.1.获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
+        String lockKey = lockKey(key);
         boolean isLock = tryLock(lockKey);
         // 6.2.判断是否获取锁成功
         if (isLock) {
             // 双重判定
-            json = stringRedisTemplate.opsForValue().get(key);
-            redisData = JSONUtil.toBean(json, RedisData.class);
-            r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-            if (redisData.getExpireTime().isAfter(LocalDateTime.now())) {
-                return r;
+            bytes = fetch(keyPrefix, key);
+            redisData = bytes == null || bytes.length == 0 ? null : decodeRedisData(keyPrefix, key, bytes, type);
+            if (redisData != null && redisData.getExpireTime().isAfter(LocalDateTime.now())) {
+                unlock(lockKey);
+                return (R) redisData.getData();
             }
-            // 6.3.成功，开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
+            // 6.3.成功，提交到重建线程池；已在重建或队列已满时直接释放锁，返回旧数据
+            boolean submitted = cacheRebuildExecutor.submit(key, () -> {
                 try {
                     // 查询数据库
-                    R newR = dbFallback.apply(id);
+                    R newR = loadFromDb(keyPrefix, () -> dbFallback.apply(id));
                     // 重建缓存
                     this.setWithLogicalExpire(key, newR, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
                 } finally {
                     // 释放锁
                     unlock(lockKey);
                 }
             });
+            if (!submitted) {
+                unlock(lockKey);
+            }
+        } else {
+            cacheMetrics.lockContention(keyPrefix);
         }
         // 6.4.返回过期的商铺信息
         return r;
     }
 
+    /**
+     * 概率提前刷新（XFetch）：缓存中保存重建耗时 delta，越接近过期、重建越慢，读请求越可能触发后台刷新。
+     * 热点 key 会被某个读请求提前刷新，冷 key 没有读请求则到期自然淘汰，下次读取时同步加载
+     */
+    @SuppressWarnings("unchecked")
+    public <R, ID> R queryWithEarlyRefresh(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 需要读取 Redis 中的过期时间，不经过本地缓存，只记录访问频率
+        hotKeyDetector.record(key);
+        // 1.从redis查询缓存
+        byte[] bytes = fetch(keyPrefix, key);
+        if (bytes != null && bytes.length == 0) {
+            // 命中空值
+            cacheMetrics.nullHit(keyPrefix);
+            return null;
+        }
+        RedisData redisData = bytes == null ? null : decodeRedisData(keyPrefix, key, bytes, type);
+        if (redisData == null) {
+            // 2.未命中，同步加载，同 key 的并发请求合并为一次
+            cacheMetrics.miss(keyPrefix);
+            return singleFlight(key, () -> loadWithDelta(keyPrefix, id, dbFallback, time, unit));
+        }
+        cacheMetrics.hit(keyPrefix);
+        // 3.命中，按 now - delta * beta * ln(rand) >= expireTime 判断是否提前刷新
+        long delta = redisData.getDelta() == null ? 0 : redisData.getDelta();
+        long gap = (long) (-delta * xfetchBeta * Math.log(ThreadLocalRandom.current().nextDouble()));
+        if (!LocalDateTime.now().plus(gap, ChronoUnit.MILLIS).isBefore(redisData.getExpireTime())) {
+            refreshAsync(keyPrefix, id, dbFallback, time, unit);
+        }
+        return (R) redisData.getData();
+    }
+
+    private <R, ID> R loadWithDelta(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        long begin = System.currentTimeMillis();
+        R r = loadFromDb(keyPrefix, () -> dbFallback.apply(id));
+        if (r == null) {
+            setNull(key);
+            return null;
+        }
+        setWithEarlyRefresh(key, r, System.currentTimeMillis() - begin, time, unit);
+        return r;
+    }
+
+    private <R, ID> void refreshAsync(String keyPrefix, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 其他节点持有锁，直接返回旧值
+        String lockKey = lockKey(key);
+        if (!tryLock(lockKey)) {
+            cacheMetrics.lockContention(keyPrefix);
+            return;
+        }
+        // 本节点已在刷新或队列已满，释放锁并返回旧值
+        boolean submitted = cacheRebuildExecutor.submit(key, () -> {
+            try {
+                loadWithDelta(keyPrefix, id, dbFallback, time, unit);
+            } finally {
+                unlock(lockKey);
+            }
+        });
+        if (!submitted) {
+            unlock(lockKey);
+        }
+    }
+
     public <R, ID> R queryWithMutex(
             String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
         String key = keyPrefix + id;
+        // 0.先查本地一级缓存
+        R local = getLocal(key);
+        if (local != null) {
+            cacheMetrics.localHit(keyPrefix);
+            return local;
+        }
         // 1.从redis查询商铺缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = fetch(keyPrefix, key);
         // 2.判断是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
-            // 3.存在，直接返回
-            return JSONUtil.toBean(shopJson, type);
-        }
-        // 判断命中的是否是空值
-        if (shopJson != null) {
-            // 返回一个错误信息
+        if (bytes != null && bytes.length > 0) {
+            // 3.存在，写入本地缓存并返回
+            R r = decode(keyPrefix, key, bytes, type);
+            if (r != null) {
+                cacheMetrics.hit(keyPrefix);
+                putLocal(key, r);
+                return r;
+            }
+        } else if (bytes != null) {
+            // 命中的是空值，返回一个错误信息
+            cacheMetrics.nullHit(keyPrefix);
             return null;
         }
-        // 4.实现缓存重建
-        // 4.1.获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        R r = null;
+        cacheMetrics.miss(keyPrefix);
+        // 4.未命中，同一 JVM 内相同 key 的并发请求合并为一次加载，只有一个线程去竞争 Redis 互斥锁
+        return singleFlight(key, () -> loadWithMutex(keyPrefix, id, type, dbFallback, time, unit));
+    }
+
+    /**
+     * 同一 JVM 内相同 key 的并发加载合并为一次，其余线程等待同一个 future 的结果
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R singleFlight(String key, Supplier<R> loader) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = inFlightLoads.putIfAbsent(key, future);
+        if (inFlight != null) {
+            // 已有线程在加载，等待其结果
+            return (R) awaitLoad(inFlight);
+        }
         try {
-            boolean isLock = tryLock(lockKey);
-            // 4.2.判断是否获取成功
-            if (!isLock) {
-                // 4.3.获取锁失败，休眠并重试
-                Thread.sleep(50);
-                return queryWithMutex(keyPrefix, id, type, dbFallback, time, unit);
-            }
-            shopJson = stringRedisTemplate.opsForValue().get(key);
-            if (StrUtil.isNotBlank(shopJson)) {
-                // 3.存在，直接返回
-                return JSONUtil.toBean(shopJson, type);
-            }
-            // 4.4.获取锁成功，根据id查询数据库
-            r = dbFallback.apply(id);
-            // 5.不存在，返回错误
+            R r = loader.get();
+            future.complete(r);
+            return r;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, future);
+        }
+    }
+
+    private <R, ID> R loadWithMutex(
+            String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback, Long time, TimeUnit unit) {
+        String key = keyPrefix + id;
+        // 1.获取互斥锁，其他节点正在重建时退避重试，并检查缓存是否已经写入
+        String lockKey = lockKey(key);
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(LOCK_SHOP_TTL);
+        long backoff = 10;
+        while (!tryLock(lockKey)) {
+            cacheMetrics.lockContention(keyPrefix);
+            if (System.currentTimeMillis() > deadline) {
+                throw new RuntimeException("等待缓存重建超时：" + key);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            backoff = Math.min(backoff * 2, 100);
+            byte[] bytes = fetch(keyPrefix, key);
+            if (bytes != null && bytes.length == 0) {
+                return null;
+            }
+            R r = bytes == null ? null : decode(keyPrefix, key, bytes, type);
+            if (r != null) {
+                putLocal(key, r);
+                return r;
+            }
+        }
+        try {
+            // 2.双重检查，锁等待期间缓存可能已经被重建，空值说明其他线程刚确认过数据不存在
+            byte[] bytes = fetch(keyPrefix, key);
+            if (bytes != null && bytes.length == 0) {
+                cacheMetrics.nullHit(keyPrefix);
+                return null;
+            }
+            if (bytes != null) {
+                R r = decode(keyPrefix, key, bytes, type);
+                if (r != null) {
+                    putLocal(key, r);
+                    return r;
+                }
+            }
+            // 3.获取锁成功，根据id查询数据库
+            R r = loadFromDb(keyPrefix, () -> dbFallback.apply(id));
+            // 4.不存在，将空值写入redis
             if (r == null) {
-                // 将空值写入redis
-                stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-                // 返回错误信息
+                setNull(key);
                 return null;
             }
-            // 6.存在，写入redis
+            // 5.存在，写入redis
             this.set(key, r, time, unit);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            putLocal(key, r);
+            return r;
         } finally {
-            // 7.释放锁
+            // 6.释放锁
             unlock(lockKey);
         }
-        // 8.返回
-        return r;
+    }
+
+    private Object awaitLoad(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 互斥锁 key 由完整的缓存 key 派生，不同缓存中 id 相同的数据互不影响
+     */
+    private static String lockKey(String key) {
+        return "lock:" + key;
     }
 
     private boolean tryLock(String key) {
@@ -185,4 +687,4 @@ public class CacheClient {
     private void unlock(String key) {
         stringRedisTemplate.delete(key);
     }
-}
\ No newline at end of file
+}
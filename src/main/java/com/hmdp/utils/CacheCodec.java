@@ -0,0 +1,28 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值编解码器，CacheClient 通过它读写 Redis 中的字节数据
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器名称，对应配置项 hmdp.cache.codec
+     */
+    String name();
+
+    /**
+     * 判断字节数据是否是当前编解码器写入的格式
+     */
+    boolean canDecode(byte[] bytes);
+
+    byte[] encode(Object value);
+
+    <T> T decode(byte[] bytes, Class<T> type);
+
+    byte[] encodeRedisData(RedisData redisData);
+
+    /**
+     * 解码逻辑过期数据，返回的 RedisData 中 data 已经是 type 类型
+     */
+    <T> RedisData decodeRedisData(byte[] bytes, Class<T> type);
+}
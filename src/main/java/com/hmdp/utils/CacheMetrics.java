@@ -0,0 +1,134 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 key 前缀统计的缓存指标，注册到 Micrometer，同时供 cache 端点汇总展示
+ */
+@Component
+public class CacheMetrics {
+
+    private final MeterRegistry registry;
+
+    private final Map<String, PrefixMeters> meters = new ConcurrentHashMap<>();
+
+    public CacheMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 命中本地一级缓存或热点缓存
+     */
+    public void localHit(String prefix) {
+        of(prefix).localHits.increment();
+    }
+
+    public void hit(String prefix) {
+        of(prefix).hits.increment();
+    }
+
+    public void miss(String prefix) {
+        of(prefix).misses.increment();
+    }
+
+    /**
+     * 命中空值标记
+     */
+    public void nullHit(String prefix) {
+        of(prefix).nullHits.increment();
+    }
+
+    /**
+     * 获取重建锁失败
+     */
+    public void lockContention(String prefix) {
+        of(prefix).lockContentions.increment();
+    }
+
+    public void recordRedisFetch(String prefix, long nanos) {
+        of(prefix).redisFetch.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDeserialize(String prefix, long nanos) {
+        of(prefix).deserialize.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordDbFallback(String prefix, long nanos) {
+        of(prefix).dbFallback.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 按前缀汇总当前的统计数据
+     */
+    public Map<String, Map<String, Object>> snapshot() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        meters.forEach((prefix, m) -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            double localHits = m.localHits.count();
+            double hits = m.hits.count();
+            double misses = m.misses.count();
+            double nullHits = m.nullHits.count();
+            double total = localHits + hits + misses + nullHits;
+            stats.put("localHits", (long) localHits);
+            stats.put("hits", (long) hits);
+            stats.put("misses", (long) misses);
+            stats.put("nullHits", (long) nullHits);
+            stats.put("hitRate", total == 0 ? 0 : (localHits + hits + nullHits) / total);
+            stats.put("lockContentions", (long) m.lockContentions.count());
+            stats.put("redisFetchMeanMs", m.redisFetch.mean(TimeUnit.MILLISECONDS));
+            stats.put("redisFetchMaxMs", m.redisFetch.max(TimeUnit.MILLISECONDS));
+            stats.put("deserializeMeanMs", m.deserialize.mean(TimeUnit.MILLISECONDS));
+            stats.put("deserializeMaxMs", m.deserialize.max(TimeUnit.MILLISECONDS));
+            stats.put("dbFallbackMeanMs", m.dbFallback.mean(TimeUnit.MILLISECONDS));
+            stats.put("dbFallbackMaxMs", m.dbFallback.max(TimeUnit.MILLISECONDS));
+            result.put(prefix, stats);
+        });
+        return result;
+    }
+
+    private PrefixMeters of(String prefix) {
+        return meters.computeIfAbsent(prefix, p -> new PrefixMeters(registry, p));
+    }
+
+    private static class PrefixMeters {
+        private final Counter localHits;
+        private final Counter hits;
+        private final Counter misses;
+        private final Counter nullHits;
+        private final Counter lockContentions;
+        private final Timer redisFetch;
+        private final Timer deserialize;
+        private final Timer dbFallback;
+
+        PrefixMeters(MeterRegistry registry, String prefix) {
+            localHits = requests(registry, prefix, "local");
+            hits = requests(registry, prefix, "hit");
+            misses = requests(registry, prefix, "miss");
+            nullHits = requests(registry, prefix, "null");
+            lockContentions = Counter.builder("cache.lock.contention").tag("prefix", prefix).register(registry);
+            redisFetch = latency(registry, prefix, "redis");
+            deserialize = latency(registry, prefix, "deserialize");
+            dbFallback = latency(registry, prefix, "db");
+        }
+
+        private static Counter requests(MeterRegistry registry, String prefix, String result) {
+            return Counter.builder("cache.requests").tag("prefix", prefix).tag("result", result).register(registry);
+        }
+
+        private static Timer latency(MeterRegistry registry, String prefix, String stage) {
+            return Timer.builder("cache.latency")
+                    .tag("prefix", prefix)
+                    .tag("stage", stage)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+    }
+}
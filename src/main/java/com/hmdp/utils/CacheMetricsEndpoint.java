@@ -0,0 +1,26 @@
+package com.hmdp.utils;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/cache，按 key 前缀展示命中率、锁竞争和各阶段耗时
+ */
+@Component
+@Endpoint(id = "cache")
+public class CacheMetricsEndpoint {
+
+    private final CacheMetrics cacheMetrics;
+
+    public CacheMetricsEndpoint(CacheMetrics cacheMetrics) {
+        this.cacheMetrics = cacheMetrics;
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> cache() {
+        return cacheMetrics.snapshot();
+    }
+}
@@ -0,0 +1,109 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 共享的缓存重建线程池：有界队列，同一个 key 排队或执行期间不重复提交，队列满时按配置丢弃（调用方返回旧值）或由调用线程执行
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * 已提交尚未执行完的 key
+     */
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 队列满时是否由调用线程同步执行；为 false 时丢弃任务，调用方继续返回旧数据
+     */
+    private final boolean callerRunsOnOverflow;
+
+    private final Counter submitted;
+    private final Counter deduplicated;
+    private final Counter rejected;
+    private final Counter failed;
+
+    public CacheRebuildExecutor(MeterRegistry registry,
+                                @Value("${hmdp.cache.rebuild.threads:10}") int threads,
+                                @Value("${hmdp.cache.rebuild.queue-capacity:1000}") int queueCapacity,
+                                @Value("${hmdp.cache.rebuild.overflow:drop}") String overflow) {
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "cache-rebuild-" + index.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.callerRunsOnOverflow = "caller-runs".equals(overflow);
+        Gauge.builder("cache.rebuild.queue", executor, e -> e.getQueue().size())
+                .description("等待执行的缓存重建任务数")
+                .register(registry);
+        Gauge.builder("cache.rebuild.active", executor, ThreadPoolExecutor::getActiveCount)
+                .description("正在执行的缓存重建任务数")
+                .register(registry);
+        this.submitted = Counter.builder("cache.rebuild.tasks").tag("result", "submitted").register(registry);
+        this.deduplicated = Counter.builder("cache.rebuild.tasks").tag("result", "deduplicated").register(registry);
+        this.rejected = Counter.builder("cache.rebuild.tasks").tag("result", "rejected").register(registry);
+        this.failed = Counter.builder("cache.rebuild.tasks").tag("result", "failed").register(registry);
+    }
+
+    /**
+     * 提交缓存重建任务
+     *
+     * @return false 表示该 key 已在重建中或队列已满被丢弃，调用方需要自行释放持有的锁
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            deduplicated.increment();
+            return false;
+        }
+        Runnable wrapped = () -> {
+            try {
+                task.run();
+            } catch (Exception e) {
+                failed.increment();
+                log.error("缓存重建失败，key={}", key, e);
+            } finally {
+                pendingKeys.remove(key);
+            }
+        };
+        try {
+            executor.execute(wrapped);
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (callerRunsOnOverflow && !executor.isShutdown()) {
+                submitted.increment();
+                wrapped.run();
+                return true;
+            }
+            pendingKeys.remove(key);
+            rejected.increment();
+            return false;
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("缓存重建线程池未能在10秒内结束，剩余任务将被丢弃");
+            executor.shutdownNow();
+        }
+    }
+}
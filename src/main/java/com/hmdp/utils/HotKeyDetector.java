@@ -0,0 +1,171 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import com.hmdp.dto.HotKeyDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点 key 探测：用两个轮转的 count-min sketch 近似统计滑动窗口内每个 key 的读次数，
+ * 超过阈值的 key 晋升到短 TTL 的本地热点缓存，读请求不再打到 Redis 的同一个分片
+ */
+@Component
+public class HotKeyDetector {
+
+    private final boolean enabled;
+    private final long threshold;
+    private final long windowMillis;
+    private final int width;
+    private final int depth;
+
+    /**
+     * 当前窗口和上一个窗口的计数，每个 sketch 是 depth 行 width 列的计数矩阵，按行展开存放
+     */
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+    private volatile long windowStart;
+
+    private final LRUCache<String, HotEntry> hotCache;
+
+    public HotKeyDetector(@Value("${hmdp.cache.hot-key.enabled:true}") boolean enabled,
+                          @Value("${hmdp.cache.hot-key.threshold:1000}") long threshold,
+                          @Value("${hmdp.cache.hot-key.window-seconds:10}") long windowSeconds,
+                          @Value("${hmdp.cache.hot-key.ttl-seconds:5}") long ttlSeconds,
+                          @Value("${hmdp.cache.hot-key.capacity:1000}") int capacity,
+                          @Value("${hmdp.cache.hot-key.sketch-width:4096}") int width,
+                          @Value("${hmdp.cache.hot-key.sketch-depth:4}") int depth) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+        this.width = width;
+        this.depth = depth;
+        this.current = new AtomicLongArray(width * depth);
+        this.previous = new AtomicLongArray(width * depth);
+        this.windowStart = System.currentTimeMillis();
+        this.hotCache = CacheUtil.newLRUCache(capacity, TimeUnit.SECONDS.toMillis(ttlSeconds));
+    }
+
+    /**
+     * 记录一次读取并返回本地热点缓存中的值；key 不是热点时返回 null。
+     * 命中热点缓存的读取也计入滑动窗口，否则已晋升的 key 会因计数衰减而被低估
+     */
+    public Object get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        count(key, true);
+        HotEntry entry = hotCache.get(key, false);
+        if (entry == null) {
+            return null;
+        }
+        entry.hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * 记录一次不经过本地热点缓存的读取，如逻辑过期和提前刷新需要读取 Redis 中的过期时间
+     */
+    public void record(String key) {
+        if (enabled) {
+            count(key, true);
+        }
+    }
+
+    /**
+     * 读到 key 的最新值后调用，滑动窗口内访问次数超过阈值时晋升到本地热点缓存
+     */
+    public void promoteIfHot(String key, Object value) {
+        if (!enabled || value == null) {
+            return;
+        }
+        long frequency = count(key, false);
+        if (frequency >= threshold) {
+            hotCache.put(key, new HotEntry(key, value, frequency));
+        }
+    }
+
+    public void evict(String key) {
+        hotCache.remove(key);
+    }
+
+    public List<HotKeyDTO> hotKeys() {
+        List<HotKeyDTO> list = new ArrayList<>();
+        for (HotEntry entry : hotCache) {
+            HotKeyDTO dto = new HotKeyDTO();
+            dto.setKey(entry.key);
+            dto.setFrequency(entry.frequency);
+            dto.setHits(entry.hits.sum());
+            list.add(dto);
+        }
+        list.sort(Comparator.comparing(HotKeyDTO::getHits).reversed());
+        return list;
+    }
+
+    /**
+     * 返回滑动窗口内的估算次数：当前窗口计数 + 上一窗口计数按剩余比例折算
+     *
+     * @param increment 是否先将计数加一
+     */
+    private long count(String key, boolean increment) {
+        rotateIfNeeded();
+        AtomicLongArray cur = current;
+        AtomicLongArray prev = previous;
+        int h1 = spread(key.hashCode());
+        int h2 = spread(h1 ^ 0x9E3779B9);
+        long curMin = Long.MAX_VALUE;
+        long prevMin = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            int index = i * width + ((h1 + i * h2) & Integer.MAX_VALUE) % width;
+            curMin = Math.min(curMin, increment ? cur.incrementAndGet(index) : cur.get(index));
+            prevMin = Math.min(prevMin, prev.get(index));
+        }
+        double remaining = 1 - (double) (System.currentTimeMillis() - windowStart) / windowMillis;
+        return curMin + (long) (prevMin * Math.max(0, remaining));
+    }
+
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if (now - windowStart < windowMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now - windowStart < windowMillis) {
+                return;
+            }
+            // 超过两个窗口没有访问，上一窗口的数据也已经失效
+            previous = now - windowStart < 2 * windowMillis ? current : new AtomicLongArray(width * depth);
+            current = new AtomicLongArray(width * depth);
+            windowStart = now;
+        }
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static class HotEntry {
+        private final String key;
+        private final Object value;
+        private final long frequency;
+        private final LongAdder hits = new LongAdder();
+
+        HotEntry(String key, Object value, long frequency) {
+            this.key = key;
+            this.value = value;
+            this.frequency = frequency;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.hmdp.utils;
+
+/**
+ * 全局唯一 id 生成器，由 hmdp.id.mode 选择实现：redis（默认）/ snowflake
+ */
+public interface IdGenerator {
+
+    /**
+     * @param keyPrefix 业务前缀，实现可以按前缀分别计数
+     */
+    long nextId(String keyPrefix);
+}
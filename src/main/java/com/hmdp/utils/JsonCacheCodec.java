@@ -0,0 +1,49 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON 编解码器，兼容 StringRedisTemplate 写入的数据，作为兜底的解码格式
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE)
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public boolean canDecode(byte[] bytes) {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public byte[] encodeRedisData(RedisData redisData) {
+        return encode(redisData);
+    }
+
+    @Override
+    public <T> RedisData decodeRedisData(byte[] bytes, Class<T> type) {
+        RedisData redisData = decode(bytes, RedisData.class);
+        redisData.setData(JSONUtil.toBean((JSONObject) redisData.getData(), type));
+        return redisData;
+    }
+}
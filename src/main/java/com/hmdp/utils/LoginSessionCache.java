@@ -0,0 +1,170 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.CacheObj;
+import cn.hutool.cache.impl.LRUCache;
+import com.hmdp.dto.UserDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_SESSION_INVALIDATE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * 登录会话的本地缓存：token -> UserDTO，命中时不访问 Redis；
+ * 登出或用户信息变化时通过 pub/sub 通知各节点淘汰，消息丢失时最多在本地过期时间内读到旧会话
+ */
+@Component
+public class LoginSessionCache {
+
+    private static final String TOKEN_PREFIX = "token:";
+    private static final String USER_PREFIX = "user:";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+    @Resource
+    private MeterRegistry meterRegistry;
+    @Resource
+    private TokenRefreshEngine tokenRefreshEngine;
+
+    @Value("${hmdp.login.local.enabled:true}")
+    private boolean enabled;
+    @Value("${hmdp.login.local.capacity:100000}")
+    private int capacity;
+    /**
+     * 本地过期时间，远小于 token 有效期；过期后重新从 Redis 读取会话和剩余有效期
+     */
+    @Value("${hmdp.login.local.ttl-seconds:30}")
+    private long ttlSeconds;
+
+    private LRUCache<String, Session> localCache;
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    private void init() {
+        localCache = CacheUtil.newLRUCache(capacity, TimeUnit.SECONDS.toMillis(ttlSeconds));
+        hits = Counter.builder("login.session.local").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("login.session.local").tag("result", "miss").register(meterRegistry);
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            if (body.startsWith(TOKEN_PREFIX)) {
+                localCache.remove(body.substring(TOKEN_PREFIX.length()));
+            } else if (body.startsWith(USER_PREFIX)) {
+                removeUser(Long.valueOf(body.substring(USER_PREFIX.length())));
+            }
+        }, new ChannelTopic(LOGIN_SESSION_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 根据 token 查询登录用户，依次查询本地缓存和 Redis，有效期用掉一定比例后由刷新引擎批量刷新
+     *
+     * @return 未登录或 token 已过期时返回 null
+     */
+    public UserDTO get(String token) {
+        Session session = enabled ? localCache.get(token, false) : null;
+        if (session != null) {
+            hits.increment();
+        } else {
+            if (enabled) {
+                misses.increment();
+            }
+            session = load(token);
+            if (session == null) {
+                return null;
+            }
+            if (enabled) {
+                localCache.put(token, session);
+            }
+        }
+        tokenRefreshEngine.onAccess(token, session.expireAt);
+        return session.user;
+    }
+
+    private Session load(String token) {
+        // 1.基于TOKEN获取redis中的用户，同一个 pipeline 读取剩余有效期
+        String key = LOGIN_USER_KEY + token;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            connection.hashCommands().hGetAll(rawKey);
+            connection.keyCommands().pTtl(rawKey);
+            return null;
+        });
+        @SuppressWarnings("unchecked")
+        Map<String, String> userMap = (Map<String, String>) results.get(0);
+        Long ttl = (Long) results.get(1);
+        // 2.判断用户是否存在
+        if (userMap == null || userMap.isEmpty() || ttl == null || ttl == -2) {
+            return null;
+        }
+        // 3.将查询到的hash数据转为UserDTO，字段固定，不需要反射
+        UserDTO user = new UserDTO();
+        user.setId(Long.valueOf(userMap.get("id")));
+        user.setNickName(userMap.get("nickName"));
+        user.setIcon(userMap.get("icon"));
+        // 没有过期时间的视为已到期，下次访问时立即刷新
+        long now = System.currentTimeMillis();
+        return new Session(user, ttl < 0 ? now - TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL) : now + ttl);
+    }
+
+    /**
+     * 淘汰 token 对应的会话（登出），通知所有节点（包括本节点）
+     */
+    public void invalidateToken(String token) {
+        localCache.remove(token);
+        stringRedisTemplate.convertAndSend(LOGIN_SESSION_INVALIDATE_CHANNEL, TOKEN_PREFIX + token);
+    }
+
+    /**
+     * 淘汰用户的全部本地会话（修改昵称、头像等），下次请求从 Redis 重新读取
+     */
+    public void invalidateUser(Long userId) {
+        removeUser(userId);
+        stringRedisTemplate.convertAndSend(LOGIN_SESSION_INVALIDATE_CHANNEL, USER_PREFIX + userId);
+    }
+
+    private void removeUser(Long userId) {
+        List<String> tokens = new ArrayList<>();
+        Iterator<CacheObj<String, Session>> iterator = localCache.cacheObjIterator();
+        while (iterator.hasNext()) {
+            CacheObj<String, Session> entry = iterator.next();
+            if (userId.equals(entry.getValue().user.getId())) {
+                tokens.add(entry.getKey());
+            }
+        }
+        tokens.forEach(localCache::remove);
+    }
+
+    private static class Session {
+        private final UserDTO user;
+        /**
+         * token 在 Redis 中的过期时间，刷新成功后由刷新引擎更新
+         */
+        private final AtomicLong expireAt;
+
+        private Session(UserDTO user, long expireAt) {
+            this.user = user;
+            this.expireAt = new AtomicLong(expireAt);
+        }
+    }
+}
@@ -5,19 +5,47 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 30L;
+    public static final String LOGIN_SESSION_INVALIDATE_CHANNEL = "login:session:invalidate";
+    public static final String LOGIN_DENYLIST_KEY = "login:denylist";
+    public static final String LOGIN_DENYLIST_CHANNEL = "login:denylist";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String SHOP_BLOOM_CHANNEL = "shop:bloom:add";
 
     public static final Long CACHE_SHOP_TYPE_TTL = 30L;
     public static final String CACHE_SHOP_TYPE_KEY = "cache:shopType:";
 
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final Long CACHE_SECKILL_VOUCHER_TTL = 30L;
+    public static final String CACHE_SECKILL_VOUCHER_KEY = "cache:seckill:voucher:";
+
+    public static final Long CACHE_SHOP_VOUCHER_TTL = 30L;
+    public static final String CACHE_SHOP_VOUCHER_KEY = "cache:voucher:shop:";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_STOCK_RECONCILE_KEY = "lock:stock:reconcile";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_WINDOW_KEY = "seckill:window:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_PERMIT_KEY = "seckill:permit:";
+    public static final String SECKILL_ORDER_TIMEOUT_KEY = "seckill:order:timeout:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_SOLD_OUT_RESET_CHANNEL = "seckill:soldout:reset";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders:";
+    public static final String SECKILL_ORDER_DEAD_LETTER_STREAM = "stream.orders.dlq";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final String ID_WORKER_TIME_KEY = "id:worker:time:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
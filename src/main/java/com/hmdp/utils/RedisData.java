@@ -8,4 +8,8 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    /**
+     * 重建缓存的耗时，毫秒，用于概率提前刷新
+     */
+    private Long delta;
 }
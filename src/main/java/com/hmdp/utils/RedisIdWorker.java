@@ -1,14 +1,26 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Component
-public class RedisIdWorker {
+public class RedisIdWorker implements IdGenerator {
     /**
      * 开始时间戳
      * 2024-08-01
@@ -19,12 +31,53 @@ public class RedisIdWorker {
      */
     private static final int COUNT_BITS = 32;
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
     private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 号段模式：每次用 INCRBY 预取一段序列号在本地发放，用到一定比例时异步预取下一段
+     */
+    @Value("${hmdp.id.segment.enabled:false}")
+    private boolean segmentEnabled;
+    @Value("${hmdp.id.segment.min-size:100}")
+    private long minSegmentSize;
+    @Value("${hmdp.id.segment.max-size:100000}")
+    private long maxSegmentSize;
+    /**
+     * 号段按观测到的发号速率调整大小，使每段大约能用这么久
+     */
+    @Value("${hmdp.id.segment.target-millis:5000}")
+    private long targetMillis;
+    /**
+     * 当前号段用到这个比例时预取下一段
+     */
+    @Value("${hmdp.id.segment.prefetch-ratio:0.8}")
+    private double prefetchRatio;
+
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
+
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 当天的日期和对应的 key 后缀，跨天时才重新格式化
+     */
+    private volatile DateKey dateKey = new DateKey(LocalDate.MIN, "");
+
     public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
     }
 
+    @PreDestroy
+    private void destroy() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    @Override
     public long nextId(String keyPrefix) {
         // 1.生成时间戳
         LocalDateTime now = LocalDateTime.now();
@@ -33,11 +86,125 @@ public class RedisIdWorker {
 
         // 2.生成序列号
         // 2.1.获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2.自增长
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        DateKey date = dateKey(now.toLocalDate());
+        // 2.2.自增长，号段模式下从本地号段发放
+        long count = segmentEnabled
+                ? buffers.computeIfAbsent(keyPrefix, SegmentBuffer::new).next(date)
+                : stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date.value);
 
         // 3.拼接并返回
         return timestamp << COUNT_BITS | count;
     }
-}
\ No newline at end of file
+
+    private DateKey dateKey(LocalDate date) {
+        DateKey key = dateKey;
+        if (!key.date.equals(date)) {
+            key = new DateKey(date, date.format(DATE_FORMATTER));
+            dateKey = key;
+        }
+        return key;
+    }
+
+    private static class DateKey {
+        private final LocalDate date;
+        private final String value;
+
+        private DateKey(LocalDate date, String value) {
+            this.date = date;
+            this.value = value;
+        }
+    }
+
+    /**
+     * 一段连续的序列号 [start, end)，只属于取号当天
+     */
+    private static class Segment {
+        private final LocalDate date;
+        private final long end;
+        private final long size;
+        private final long fetchedAt;
+        private final AtomicLong cursor;
+
+        private Segment(LocalDate date, long start, long end) {
+            this.date = date;
+            this.end = end;
+            this.size = end - start;
+            this.fetchedAt = System.nanoTime();
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * 每个业务前缀一个双号段缓冲：发放当前号段时后台预取下一段，当前段用完直接切换
+     */
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile CompletableFuture<Segment> next;
+        private long nextSize = minSegmentSize;
+
+        private SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        private long next(DateKey date) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.date.equals(date.date)) {
+                    long value = segment.cursor.getAndIncrement();
+                    if (value < segment.end) {
+                        // 用到预取比例时异步预取下一段，只有跨过阈值的那一次会触发
+                        if (value == segment.end - (long) (segment.size * (1 - prefetchRatio)) - 1) {
+                            prefetch(segment, date);
+                        }
+                        return value;
+                    }
+                }
+                switchSegment(segment, date);
+            }
+        }
+
+        private synchronized void prefetch(Segment segment, DateKey date) {
+            if (current != segment || next != null) {
+                return;
+            }
+            // 按当前号段的消耗速率估算下一段的大小
+            long used = segment.cursor.get() - (segment.end - segment.size);
+            long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - segment.fetchedAt));
+            nextSize = Math.max(minSegmentSize, Math.min(maxSegmentSize, used * targetMillis / elapsed));
+            long size = nextSize;
+            next = CompletableFuture.supplyAsync(() -> fetch(date, size), prefetchExecutor);
+        }
+
+        private synchronized void switchSegment(Segment exhausted, DateKey date) {
+            if (current != exhausted) {
+                // 其他线程已经切换过
+                return;
+            }
+            Segment segment = null;
+            CompletableFuture<Segment> future = next;
+            next = null;
+            if (future != null) {
+                try {
+                    segment = future.join();
+                } catch (Exception e) {
+                    log.warn("预取号段失败，同步重新获取，前缀：{}", keyPrefix, e);
+                }
+            }
+            // 预取的号段属于前一天（跨天）或预取失败时同步获取
+            if (segment == null || !segment.date.equals(date.date)) {
+                segment = fetch(date, nextSize);
+            }
+            current = segment;
+        }
+
+        private Segment fetch(DateKey date, long size) {
+            Long end = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date.value, size);
+            if (end == null) {
+                throw new IllegalStateException("获取号段失败，前缀：" + keyPrefix);
+            }
+            // INCRBY 返回段内最大的号，与逐个 INCR 一样从 1 开始
+            return new Segment(date.date, end - size + 1, end + 1);
+        }
+    }
+}
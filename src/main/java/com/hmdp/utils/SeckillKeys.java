@@ -0,0 +1,59 @@
+package com.hmdp.utils;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_TIMEOUT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_PERMIT_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_WINDOW_KEY;
+
+/**
+ * 秒杀分片的 Redis key。每个库存桶是一个分片，分片标识为 券id:桶号，未分桶的秒杀券只有 0 号分片；
+ * 分片的库存、时间窗口、下单用户、准入许可、订单 stream 和超时 zset 使用同一个 hash tag，
+ * 在 Redis Cluster 中位于同一个槽位，秒杀脚本只访问一个槽位，不同分片可以分布在不同节点上
+ */
+public class SeckillKeys {
+
+    public static String shard(Long voucherId, int bucket) {
+        return voucherId + ":" + bucket;
+    }
+
+    public static Long voucherId(String shard) {
+        return Long.valueOf(shard.substring(0, shard.indexOf(':')));
+    }
+
+    /**
+     * 用户的下单标记只记录在所属分片中，按用户id哈希，保证一人一单只需要检查一个分片
+     */
+    public static int homeBucket(Long userId, int buckets) {
+        return Math.floorMod(userId.hashCode(), buckets);
+    }
+
+    public static String stock(String shard) {
+        return SECKILL_STOCK_KEY + tag(shard);
+    }
+
+    public static String window(String shard) {
+        return SECKILL_WINDOW_KEY + tag(shard);
+    }
+
+    public static String buyers(String shard) {
+        return SECKILL_ORDER_KEY + tag(shard);
+    }
+
+    public static String permit(String shard) {
+        return SECKILL_PERMIT_KEY + tag(shard);
+    }
+
+    public static String stream(String shard) {
+        return SECKILL_ORDER_STREAM + tag(shard);
+    }
+
+    public static String timeout(String shard) {
+        return SECKILL_ORDER_TIMEOUT_KEY + tag(shard);
+    }
+
+    private static String tag(String shard) {
+        return "{" + shard + "}";
+    }
+}
@@ -0,0 +1,157 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 无状态登录令牌：v1.{payload}.{signature}，payload 为 UserDTO 字段、过期时间和令牌id 的 JSON，
+ * signature 为 HMAC-SHA256，均使用 base64url 编码；校验只需要 CPU，不访问 Redis
+ */
+@Slf4j
+@Component
+public class SignedTokenCodec {
+
+    public static final String PREFIX = "v1.";
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    /**
+     * 签名密钥，所有节点必须一致；修改后已签发的令牌全部失效
+     */
+    @Value("${hmdp.login.token.secret:}")
+    private String secret;
+    @Value("${hmdp.login.token.mode:session}")
+    private String mode;
+    @Value("${hmdp.login.token.ttl-minutes:720}")
+    private long ttlMinutes;
+
+    private SecretKeySpec key;
+
+    /**
+     * Mac 不是线程安全的，每个线程复用一个实例
+     */
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    @PostConstruct
+    private void init() {
+        if (StrUtil.isBlank(secret)) {
+            // 签发签名令牌时必须配置密钥，否则各节点互不认可对方签发的令牌
+            if ("signed".equals(mode)) {
+                throw new IllegalStateException("签名令牌模式必须配置 hmdp.login.token.secret");
+            }
+            // 不签发签名令牌时使用随机密钥，收到的签名令牌一律校验失败
+            secret = IdUtil.fastSimpleUUID();
+            log.info("未配置 hmdp.login.token.secret，不接受签名令牌");
+        }
+        key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    }
+
+    public static boolean isSigned(String token) {
+        return token.startsWith(PREFIX);
+    }
+
+    /**
+     * 签发令牌
+     */
+    public String encode(UserDTO user) {
+        JSONObject claims = JSONUtil.createObj()
+                .set("id", user.getId())
+                .set("nickName", user.getNickName())
+                .set("icon", user.getIcon())
+                .set("exp", System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(ttlMinutes))
+                .set("jti", IdUtil.fastSimpleUUID());
+        String signed = PREFIX + ENCODER.encodeToString(claims.toString().getBytes(StandardCharsets.UTF_8));
+        return signed + "." + ENCODER.encodeToString(sign(signed));
+    }
+
+    /**
+     * 校验签名和过期时间
+     *
+     * @return 令牌无效或已过期时返回 null
+     */
+    public Claims decode(String token) {
+        // 1.校验格式和签名
+        int dot = token.lastIndexOf('.');
+        if (!isSigned(token) || dot <= PREFIX.length()) {
+            return null;
+        }
+        byte[] signature;
+        JSONObject json;
+        try {
+            signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, sign(token.substring(0, dot)))) {
+                return null;
+            }
+            json = JSONUtil.parseObj(new String(DECODER.decode(token.substring(PREFIX.length(), dot)),
+                    StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        // 2.校验过期时间
+        long expireAt = json.getLong("exp", 0L);
+        if (expireAt <= System.currentTimeMillis()) {
+            return null;
+        }
+        UserDTO user = new UserDTO();
+        user.setId(json.getLong("id"));
+        user.setNickName(json.getStr("nickName"));
+        user.setIcon(json.getStr("icon"));
+        return new Claims(user, json.getStr("jti"), expireAt);
+    }
+
+    private byte[] sign(String content) {
+        return macs.get().doFinal(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("初始化令牌签名失败", e);
+        }
+    }
+
+    public static class Claims {
+        private final UserDTO user;
+        private final String tokenId;
+        private final long expireAt;
+
+        private Claims(UserDTO user, String tokenId, long expireAt) {
+            this.user = user;
+            this.tokenId = tokenId;
+            this.expireAt = expireAt;
+        }
+
+        public UserDTO getUser() {
+            return user;
+        }
+
+        public String getTokenId() {
+            return tokenId;
+        }
+
+        public long getExpireAt() {
+            return expireAt;
+        }
+    }
+}
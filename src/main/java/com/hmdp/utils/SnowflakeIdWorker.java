@@ -0,0 +1,198 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.IdUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_TIME_KEY;
+
+/**
+ * 雪花算法 id 生成器：1 位模式标记 + 40 位毫秒时间戳 + 10 位 worker id + 12 位毫秒内序列号，
+ * 发号完全在内存中完成；worker id 启动时从 Redis 租用并定期续约，Redis 短时不可用不影响发号。
+ * 模式标记位使 id 与 {@link RedisIdWorker} 的 id（2058 年前小于 2^62）互不重叠，两种模式可以切换
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(name = "hmdp.id.mode", havingValue = "snowflake")
+public class SnowflakeIdWorker implements IdGenerator {
+    /**
+     * 开始时间戳
+     * 2024-08-01
+     */
+    private static final long BEGIN_TIMESTAMP = 1722441600000L;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int WORKER_BITS = 10;
+    private static final int TIMESTAMP_BITS = 40;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    private static final long MAX_WORKERS = 1L << WORKER_BITS;
+    private static final long MODE_FLAG = 1L << (TIMESTAMP_BITS + WORKER_BITS + SEQUENCE_BITS);
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("id_worker_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * worker id 租约时长，续约失败时在租约剩余时间内仍可继续发号
+     */
+    @Value("${hmdp.id.snowflake.lease-seconds:600}")
+    private long leaseSeconds;
+    /**
+     * 时钟回拨不超过这个时长时等待时钟追上，超过时拒绝发号
+     */
+    @Value("${hmdp.id.snowflake.max-backward-millis:10}")
+    private long maxBackwardMillis;
+
+    /**
+     * 本节点标识，租约 key 的值
+     */
+    private final String owner;
+
+    /**
+     * 上次发号的时间戳（相对开始时间）和序列号：timestamp << SEQUENCE_BITS | sequence
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    private volatile long workerId = -1;
+    /**
+     * 租约在本地视为有效的截止时间，超过后停止发号，避免与重新租到同一 worker id 的节点冲突
+     */
+    private volatile long leaseValidUntil;
+
+    public SnowflakeIdWorker(StringRedisTemplate stringRedisTemplate) throws UnknownHostException {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.owner = InetAddress.getLocalHost().getHostName() + ":" + IdUtil.fastSimpleUUID();
+    }
+
+    @PostConstruct
+    private void init() {
+        acquire();
+    }
+
+    @PreDestroy
+    private void destroy() {
+        // 记录最后发号时间，租约缩短到 1 秒后释放
+        renew(1);
+    }
+
+    @Override
+    public long nextId(String keyPrefix) {
+        if (System.currentTimeMillis() >= leaseValidUntil) {
+            throw new IllegalStateException("worker id 租约已过期，暂停发号");
+        }
+        while (true) {
+            long now = System.currentTimeMillis() - BEGIN_TIMESTAMP;
+            long last = state.get();
+            long lastTimestamp = last >>> SEQUENCE_BITS;
+            long next;
+            if (now > lastTimestamp) {
+                // 1.新的毫秒，序列号从 0 开始
+                next = now << SEQUENCE_BITS;
+            } else if (now == lastTimestamp || lastTimestamp - now <= maxBackwardMillis) {
+                // 2.同一毫秒（或小幅回拨时沿用上次的时间戳），序列号用完时自旋到下一毫秒
+                if ((last & MAX_SEQUENCE) == MAX_SEQUENCE) {
+                    waitUntil(lastTimestamp + 1);
+                    continue;
+                }
+                next = last + 1;
+            } else {
+                // 3.时钟回拨超过上限，拒绝发号
+                throw new IllegalStateException("时钟回拨 " + (lastTimestamp - now) + " 毫秒，拒绝发号");
+            }
+            if (state.compareAndSet(last, next)) {
+                return MODE_FLAG
+                        | (next >>> SEQUENCE_BITS) << (WORKER_BITS + SEQUENCE_BITS)
+                        | workerId << SEQUENCE_BITS
+                        | (next & MAX_SEQUENCE);
+            }
+        }
+    }
+
+    /**
+     * 定期续约，同时记录最近发号时间，重启后从这个时间之后继续发号
+     */
+    @Scheduled(fixedDelayString = "${hmdp.id.snowflake.heartbeat-millis:60000}")
+    public void heartbeat() {
+        try {
+            if (!renew(leaseSeconds)) {
+                // 租约已被其他节点占用或已过期，重新租用一个 worker id
+                log.warn("worker id {} 租约已丢失，重新租用", workerId);
+                acquire();
+            }
+        } catch (Exception e) {
+            // Redis 不可用时继续使用本地租约，剩余时间见 leaseValidUntil
+            log.error("worker id {} 续约失败", workerId, e);
+        }
+    }
+
+    private boolean renew(long seconds) {
+        long start = System.currentTimeMillis();
+        Long result = stringRedisTemplate.execute(RENEW_SCRIPT,
+                Arrays.asList(ID_WORKER_KEY + workerId, ID_WORKER_TIME_KEY + workerId),
+                owner, String.valueOf(seconds), String.valueOf(lastIssuedMillis()));
+        if (result == null || result != 1) {
+            return false;
+        }
+        leaseValidUntil = start + TimeUnit.SECONDS.toMillis(seconds);
+        return true;
+    }
+
+    private synchronized void acquire() {
+        // 1.从随机位置开始依次尝试，减少节点同时启动时的冲突
+        long offset = ThreadLocalRandom.current().nextLong(MAX_WORKERS);
+        for (long i = 0; i < MAX_WORKERS; i++) {
+            long id = (offset + i) % MAX_WORKERS;
+            long start = System.currentTimeMillis();
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + id, owner, leaseSeconds, TimeUnit.SECONDS);
+            if (!Boolean.TRUE.equals(success)) {
+                continue;
+            }
+            // 2.上一个持有者最后发号的时间晚于本机时钟时，从该时间之后开始发号
+            String lastIssued = stringRedisTemplate.opsForValue().get(ID_WORKER_TIME_KEY + id);
+            if (lastIssued != null) {
+                long timestamp = Long.parseLong(lastIssued) - BEGIN_TIMESTAMP;
+                state.accumulateAndGet(timestamp << SEQUENCE_BITS | MAX_SEQUENCE, Math::max);
+            }
+            workerId = id;
+            leaseValidUntil = start + TimeUnit.SECONDS.toMillis(leaseSeconds);
+            log.info("租用 worker id：{}", id);
+            return;
+        }
+        throw new IllegalStateException("没有可用的 worker id");
+    }
+
+    private long lastIssuedMillis() {
+        return (state.get() >>> SEQUENCE_BITS) + BEGIN_TIMESTAMP;
+    }
+
+    private static void waitUntil(long timestamp) {
+        while (System.currentTimeMillis() - BEGIN_TIMESTAMP < timestamp) {
+            Thread.yield();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_DENYLIST_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_DENYLIST_KEY;
+
+/**
+ * 已吊销的签名令牌：Redis zset 保存 令牌id -> 令牌过期时间，本地镜像一份，校验时只查本地；
+ * 吊销时通过 pub/sub 通知各节点，并定期与 Redis 全量同步，令牌过期后自动清理
+ */
+@Slf4j
+@Component
+public class TokenDenylist {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 令牌id -> 令牌过期时间
+     */
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+            revoked.put(parts[0], Long.valueOf(parts[1]));
+        }, new ChannelTopic(LOGIN_DENYLIST_CHANNEL));
+        sync();
+    }
+
+    public boolean isRevoked(String tokenId) {
+        return revoked.containsKey(tokenId);
+    }
+
+    /**
+     * 吊销令牌，过期时间之后不再需要保留
+     */
+    public void revoke(String tokenId, long expireAt) {
+        revoked.put(tokenId, expireAt);
+        stringRedisTemplate.opsForZSet().add(LOGIN_DENYLIST_KEY, tokenId, expireAt);
+        stringRedisTemplate.convertAndSend(LOGIN_DENYLIST_CHANNEL, tokenId + ":" + expireAt);
+    }
+
+    /**
+     * 清理已过期的令牌，并从 Redis 重新加载，弥补丢失的吊销通知
+     */
+    @Scheduled(fixedDelayString = "${hmdp.login.token.denylist-sync-millis:60000}")
+    public void sync() {
+        try {
+            long now = System.currentTimeMillis();
+            stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_DENYLIST_KEY, Double.NEGATIVE_INFINITY, now);
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(LOGIN_DENYLIST_KEY, now, Double.POSITIVE_INFINITY);
+            // 吊销不会撤销，直接合并到本地镜像并清理已过期的令牌
+            if (tuples != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    revoked.put(tuple.getValue(), tuple.getScore().longValue());
+                }
+            }
+            revoked.values().removeIf(expireAt -> expireAt <= now);
+        } catch (Exception e) {
+            // Redis 不可用时继续使用本地镜像
+            log.error("同步令牌黑名单失败", e);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * token 有效期的延迟批量刷新：只有 token 的有效期用掉一定比例后才刷新，
+ * 并发请求的刷新合并成一个，每隔几毫秒用一个 pipeline 批量发送 PEXPIRE
+ */
+@Slf4j
+@Component
+public class TokenRefreshEngine {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 有效期用掉这个比例后才刷新
+     */
+    @Value("${hmdp.login.refresh.fraction:0.5}")
+    private double fraction;
+    @Value("${hmdp.login.refresh.flush-interval-millis:5}")
+    private long flushIntervalMillis;
+    @Value("${hmdp.login.refresh.max-batch-size:1000}")
+    private int maxBatchSize;
+
+    private final long ttlMillis = TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+
+    /**
+     * 等待刷新的 token -> 会话中的过期时间，同一个 token 只保留一份，刷新成功后才更新过期时间
+     */
+    private final Map<String, AtomicLong> pending = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flusher;
+
+    private Counter issued;
+    private Counter suppressed;
+    private DistributionSummary batchSize;
+
+    @PostConstruct
+    private void init() {
+        issued = Counter.builder("login.token.refresh").tag("result", "issued").register(meterRegistry);
+        suppressed = Counter.builder("login.token.refresh").tag("result", "suppressed").register(meterRegistry);
+        batchSize = DistributionSummary.builder("login.token.refresh.batch.size")
+                .description("每次 pipeline 发送的 PEXPIRE 数")
+                .register(meterRegistry);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "token-refresh"));
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(1, TimeUnit.SECONDS);
+        flushSafely();
+    }
+
+    /**
+     * 记录一次访问，有效期用掉的比例达到阈值时登记刷新
+     *
+     * @param expireAt token 在 Redis 中的过期时间，PEXPIRE 发送成功后更新为新的过期时间
+     */
+    public void onAccess(String token, AtomicLong expireAt) {
+        long now = System.currentTimeMillis();
+        // 1.有效期用掉的比例未达到阈值，不刷新
+        if (now - (expireAt.get() - ttlMillis) < ttlMillis * fraction) {
+            suppressed.increment();
+            return;
+        }
+        // 2.并发请求只有一个能登记刷新，刷新完成前其他请求直接跳过
+        if (pending.putIfAbsent(token, expireAt) != null) {
+            suppressed.increment();
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            while (!pending.isEmpty()) {
+                if (flush() < maxBatchSize) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            log.error("批量刷新 token 有效期失败", e);
+        }
+    }
+
+    private int flush() {
+        // 1.取一批等待刷新的 token，刷新完成后才移除，期间的并发访问不会重复登记
+        List<Map.Entry<String, AtomicLong>> entries = new ArrayList<>(Math.min(pending.size(), maxBatchSize));
+        Iterator<Map.Entry<String, AtomicLong>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && entries.size() < maxBatchSize) {
+            Map.Entry<String, AtomicLong> entry = iterator.next();
+            entries.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+        }
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        try {
+            // 2.一个 pipeline 发送全部 PEXPIRE
+            long start = System.currentTimeMillis();
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Map.Entry<String, AtomicLong> entry : entries) {
+                    connection.keyCommands().pExpire((LOGIN_USER_KEY + entry.getKey()).getBytes(StandardCharsets.UTF_8), ttlMillis);
+                }
+                return null;
+            });
+            // 3.发送成功后才更新过期时间；失败时保持原值，下次访问重新登记
+            for (Map.Entry<String, AtomicLong> entry : entries) {
+                entry.getValue().accumulateAndGet(start + ttlMillis, Math::max);
+            }
+        } finally {
+            entries.forEach(entry -> pending.remove(entry.getKey(), entry.getValue()));
+        }
+        issued.increment(entries.size());
+        batchSize.record(entries.size());
+        return entries.size();
+    }
+}
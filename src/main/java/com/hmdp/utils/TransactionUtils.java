@@ -0,0 +1,24 @@
+package com.hmdp.utils;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class TransactionUtils {
+
+    /**
+     * 在当前事务提交后执行，事务回滚时不执行；没有事务时立即执行。
+     * 用于写 Redis、淘汰缓存和发布通知，避免提交前的并发查询把旧数据重新写回缓存
+     */
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
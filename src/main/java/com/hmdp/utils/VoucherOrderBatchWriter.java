@@ -0,0 +1,178 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 订单组提交：收集并发提交的订单，凑满 N 条或等待 T 毫秒后在一个事务中批量写入，
+ * 整批失败时逐条重试，单条坏数据不影响同批其他订单；只有确认落库的订单正常完成，其余一律异常完成
+ */
+@Slf4j
+@Component
+public class VoucherOrderBatchWriter {
+
+    @Lazy
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 每批最多写入的订单数
+     */
+    @Value("${hmdp.order.batch.max-size:100}")
+    private int maxSize;
+    /**
+     * 凑批最长等待时间
+     */
+    @Value("${hmdp.order.batch.max-wait-millis:10}")
+    private long maxWaitMillis;
+
+    private final BlockingQueue<PendingOrder> queue = new LinkedBlockingQueue<>();
+
+    private Thread writer;
+
+    private volatile boolean running = true;
+
+    private DistributionSummary batchSize;
+    private Counter batchFallback;
+
+    @PostConstruct
+    private void init() {
+        batchSize = DistributionSummary.builder("seckill.order.batch.size")
+                .description("每次组提交写入的订单数")
+                .register(meterRegistry);
+        batchFallback = Counter.builder("seckill.order.batch.fallback")
+                .description("整批写入失败后改为逐条写入的次数")
+                .register(meterRegistry);
+        writer = new Thread(this::run, "voucher-order-writer");
+        writer.start();
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        // 停止接收新订单，等待已入队的订单写完
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * 提交订单，返回的 future 在订单落库（或确认已存在）后完成，写入失败时异常完成
+     */
+    public CompletableFuture<Void> submit(VoucherOrder voucherOrder) {
+        PendingOrder pending = new PendingOrder(voucherOrder);
+        if (!running) {
+            pending.future.completeExceptionally(new IllegalStateException("订单写入器已关闭"));
+            return pending.future;
+        }
+        queue.add(pending);
+        return pending.future;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private void run() {
+        List<PendingOrder> batch = new ArrayList<>(maxSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                // 1.等待第一条订单
+                PendingOrder first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 2.凑满 maxSize 条或等到 maxWaitMillis 为止
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                while (batch.size() < maxSize) {
+                    if (queue.drainTo(batch, maxSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingOrder next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // 3.写入
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("订单组提交异常", e);
+            } finally {
+                // 未确认落库的订单一律异常完成，消息留在 pending-list 重试，不能让消费者一直等待或误确认
+                fail(batch, new IllegalStateException("订单未能落库"));
+                batch.clear();
+            }
+        }
+        // 4.退出前仍在队列中的订单（包括关闭时并发提交的）同样异常完成
+        queue.drainTo(batch);
+        fail(batch, new IllegalStateException("订单写入器已关闭"));
+    }
+
+    private static void fail(List<PendingOrder> orders, Exception e) {
+        for (PendingOrder pending : orders) {
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    private void flush(List<PendingOrder> batch) {
+        batchSize.record(batch.size());
+        try {
+            // 1.整批在一个事务中写入
+            voucherOrderService.createVoucherOrders(batch.stream().map(p -> p.order).collect(Collectors.toList()));
+            batch.forEach(p -> p.future.complete(null));
+            return;
+        } catch (Exception e) {
+            batchFallback.increment();
+            log.warn("订单批量写入失败，改为逐条写入，批次大小：{}", batch.size(), e);
+        }
+        // 2.整批已回滚，逐条写入隔离坏数据
+        for (PendingOrder pending : batch) {
+            try {
+                voucherOrderService.createVoucherOrder(pending.order);
+                pending.future.complete(null);
+            } catch (DuplicateKeyException e) {
+                // 订单已存在，视为成功
+                pending.future.complete(null);
+            } catch (Exception e) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class PendingOrder {
+        private final VoucherOrder order;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingOrder(VoucherOrder order) {
+            this.order = order;
+        }
+    }
+}
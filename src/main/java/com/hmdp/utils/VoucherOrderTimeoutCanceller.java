@@ -0,0 +1,212 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.SystemConstants.ORDER_STATUS_CANCELLED;
+
+/**
+ * 未支付订单超时取消：秒杀脚本按支付截止时间把订单登记到所在分片的 zset，这里逐个分片只认领已到期的任务，
+ * 取消仍未支付的订单并把库存归还到数据库和 Redis，不需要扫描订单表
+ */
+@Slf4j
+@Component
+public class VoucherOrderTimeoutCanceller {
+
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT;
+
+    static {
+        CLAIM_SCRIPT = new DefaultRedisScript<>();
+        CLAIM_SCRIPT.setLocation(new ClassPathResource("order_timeout_claim.lua"));
+        CLAIM_SCRIPT.setResultType(List.class);
+    }
+
+    @Lazy
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    /**
+     * 每次认领的任务数
+     */
+    @Value("${hmdp.order.timeout.batch-size:500}")
+    private int batchSize;
+    /**
+     * 没有到期任务时的轮询间隔
+     */
+    @Value("${hmdp.order.timeout.poll-interval-millis:200}")
+    private long pollIntervalMillis;
+    /**
+     * 认领后多久未完成会被重新认领，也是订单尚未落库时的重试间隔
+     */
+    @Value("${hmdp.order.timeout.retry-millis:30000}")
+    private long retryMillis;
+    /**
+     * 截止时间过后订单仍未落库的最长等待时间，超过后放弃并留给对账处理
+     */
+    @Value("${hmdp.order.timeout.persist-grace-minutes:30}")
+    private long persistGraceMinutes;
+
+    private Thread worker;
+
+    private volatile boolean running = true;
+
+    private Counter cancelled;
+    private Counter restored;
+    private Counter settled;
+    private Counter abandoned;
+
+    @PostConstruct
+    private void init() {
+        cancelled = Counter.builder("seckill.order.timeout").tag("result", "cancelled").register(meterRegistry);
+        restored = Counter.builder("seckill.order.timeout").tag("result", "restored").register(meterRegistry);
+        settled = Counter.builder("seckill.order.timeout").tag("result", "settled").register(meterRegistry);
+        abandoned = Counter.builder("seckill.order.timeout").tag("result", "abandoned").register(meterRegistry);
+        Gauge.builder("seckill.order.timeout.scheduled", this, c -> c.scheduledCount())
+                .description("等待支付超时的订单数")
+                .register(meterRegistry);
+        worker = new Thread(this::run, "voucher-order-timeout");
+        worker.start();
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        running = false;
+        worker.interrupt();
+        worker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                // 每个分片有自己的超时 zset，任一分片满批时说明还有积压，立即继续
+                boolean backlog = false;
+                for (String shard : seckillVoucherService.shards()) {
+                    backlog |= poll(shard);
+                }
+                if (!backlog) {
+                    Thread.sleep(pollIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("处理未支付订单超时异常", e);
+            }
+        }
+    }
+
+    /**
+     * 认领并处理一个分片的到期任务
+     *
+     * @return 是否认领满批
+     */
+    private boolean poll(String shard) {
+        String key = SeckillKeys.timeout(shard);
+        try {
+            long now = System.currentTimeMillis();
+            @SuppressWarnings("unchecked")
+            List<String> members = stringRedisTemplate.execute(CLAIM_SCRIPT, Collections.singletonList(key),
+                    String.valueOf(now), String.valueOf(batchSize), String.valueOf(now + retryMillis));
+            if (members == null || members.isEmpty()) {
+                return false;
+            }
+            handle(shard, members, now);
+            return members.size() >= batchSize;
+        } catch (Exception e) {
+            log.error("处理未支付订单超时异常，zset：{}", key, e);
+            return false;
+        }
+    }
+
+    private void handle(String shard, List<String> members, long now) {
+        // 1.解析任务，member 为 订单id:券id:用户id:截止时间
+        Map<Long, String[]> tasks = new HashMap<>(members.size() * 2);
+        Map<Long, String> memberOf = new HashMap<>(members.size() * 2);
+        for (String member : members) {
+            String[] parts = member.split(":");
+            Long orderId = Long.valueOf(parts[0]);
+            tasks.put(orderId, parts);
+            memberOf.put(orderId, member);
+        }
+        // 2.取消仍未支付的订单，数据库库存在同一事务中归还
+        List<VoucherOrder> orders = voucherOrderService.cancelUnpaidOrders(new ArrayList<>(tasks.keySet()));
+        List<String> done = new ArrayList<>(members.size());
+        List<String> restore = new ArrayList<>(members.size());
+        for (VoucherOrder order : orders) {
+            restore.add(memberOf.remove(order.getId()));
+        }
+        cancelled.increment(orders.size());
+        // 3.其余已落库的订单：已取消的说明之前取消后 Redis 库存没能归还，重新归还；已支付等其他状态直接结束任务
+        if (!memberOf.isEmpty()) {
+            List<VoucherOrder> persisted = voucherOrderService.query().select("id", "status")
+                    .in("id", memberOf.keySet()).list();
+            for (VoucherOrder order : persisted) {
+                String member = memberOf.remove(order.getId());
+                if (Integer.valueOf(ORDER_STATUS_CANCELLED).equals(order.getStatus())) {
+                    restore.add(member);
+                } else {
+                    done.add(member);
+                    settled.increment();
+                }
+            }
+        }
+        // 4.订单还没落库的保留任务，认领时已推迟 retryMillis 后重试；超过宽限期的放弃
+        long grace = TimeUnit.MINUTES.toMillis(persistGraceMinutes);
+        for (Map.Entry<Long, String> entry : memberOf.entrySet()) {
+            long deadline = Long.parseLong(tasks.get(entry.getKey())[3]);
+            if (now - deadline > grace) {
+                done.add(entry.getValue());
+                abandoned.increment();
+                log.error("订单超过支付截止时间仍未落库，放弃超时取消：{}", entry.getValue());
+            }
+        }
+        if (!done.isEmpty()) {
+            stringRedisTemplate.opsForZSet().remove(SeckillKeys.timeout(shard), done.toArray());
+        }
+        // 5.归还 Redis 库存并允许这些用户重新购买，任务在归还库存的同一个脚本中删除；
+        // 失败时任务保留，认领时已推迟 retryMillis，重新认领后订单已是取消状态，只补做归还
+        if (!restore.isEmpty()) {
+            List<Long> userIds = new ArrayList<>(restore.size());
+            for (String member : restore) {
+                userIds.add(Long.valueOf(member.split(":")[2]));
+            }
+            restored.increment(seckillVoucherService.restoreCancelledOrders(shard, restore, userIds));
+        }
+    }
+
+    private double scheduledCount() {
+        long total = 0;
+        for (String shard : seckillVoucherService.shards()) {
+            Long size = stringRedisTemplate.opsForZSet().zCard(SeckillKeys.timeout(shard));
+            total += size == null ? 0 : size;
+        }
+        return total;
+    }
+}
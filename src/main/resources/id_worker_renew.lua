@@ -0,0 +1,9 @@
+-- 续约 worker id 租约并记录最近发号时间，返回 1 续约成功，0 租约已属于其他节点或已过期
+-- KEYS[1] 租约 key，KEYS[2] 最近发号时间 key
+-- ARGV[1] 本节点标识，ARGV[2] 租约时长(秒)，ARGV[3] 最近发号时间戳(毫秒)
+if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+redis.call('EXPIRE', KEYS[1], ARGV[2])
+redis.call('SET', KEYS[2], ARGV[3])
+return 1
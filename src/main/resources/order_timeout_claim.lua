@@ -0,0 +1,9 @@
+-- 认领到期的未支付订单超时任务，返回认领到的 member 列表
+-- 认领只是把任务推迟到 ARGV[3]，处理完成后再删除；认领者宕机时任务到期会被重新认领
+-- KEYS[1] 超时 zset
+-- ARGV[1] 当前时间戳(毫秒)，ARGV[2] 每次最多认领的数量，ARGV[3] 认领后重新到期的时间戳(毫秒)
+local items = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+for i = 1, #items do
+    redis.call('ZADD', KEYS[1], ARGV[3], items[i])
+end
+return items
@@ -0,0 +1,14 @@
+-- 归还超时取消订单占用的分片库存，返回实际归还的数量
+-- 任务仍在 zset 中才归还，删除任务和归还库存在同一个脚本中完成，重复执行不会重复归还
+-- KEYS[1] 分片的超时 zset，KEYS[2] 分片的库存 key，KEYS[3] 分片的准入许可 key
+-- ARGV[1] 许可数与库存的比例，ARGV[2..] 已取消订单的 member
+local restored = 0
+for i = 2, #ARGV do
+    restored = restored + redis.call('ZREM', KEYS[1], ARGV[i])
+end
+if restored > 0 then
+    redis.call('INCRBY', KEYS[2], restored)
+    -- 归还的库存按比例追加准入许可
+    redis.call('INCRBY', KEYS[3], math.ceil(restored * tonumber(ARGV[1])))
+end
+return restored
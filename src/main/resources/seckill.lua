@@ -0,0 +1,43 @@
+-- 秒杀资格判断和库存预扣减，返回 0 成功，1 本分片库存不足，2 重复下单，3 秒杀尚未开始，4 秒杀已经结束，5 秒杀券不存在
+-- 全部 key 属于同一个分片（同一个 hash tag）：
+-- KEYS[1] 库存，KEYS[2] 时间窗口 hash，KEYS[3] 下单用户 bitmap，KEYS[4] 订单 stream，KEYS[5] 未支付订单超时 zset
+-- ARGV[1] 用户id，ARGV[2] 订单id，ARGV[3] 当前时间戳(毫秒)，ARGV[4] 秒杀券id，ARGV[5] 支付截止时间戳(毫秒)
+-- ARGV[6] 下单用户标记：0 不处理（用户已在所属分片占用标记，这里借用本分片库存），1 检查并记录，
+--         2 检查并记录，本分片售罄时也先占用标记，再去其他分片借用库存，借用失败由调用方清除
+-- ARGV[7] stream 保留的大约长度，超过后裁剪最早的消息
+local stock = tonumber(redis.call('GET', KEYS[1]))
+local window = redis.call('HMGET', KEYS[2], 'begin', 'end')
+if not stock or not window[1] then
+    return 5
+end
+
+local now = tonumber(ARGV[3])
+if now < tonumber(window[1]) then
+    return 3
+end
+if now > tonumber(window[2]) then
+    return 4
+end
+
+-- 下单用户以用户id为偏移量记录在 bitmap 中，每个用户只占 1 bit
+local mode = ARGV[6]
+if mode ~= '0' and redis.call('GETBIT', KEYS[3], ARGV[1]) == 1 then
+    return 2
+end
+
+if stock < 1 then
+    if mode == '2' then
+        redis.call('SETBIT', KEYS[3], ARGV[1], 1)
+    end
+    return 1
+end
+
+redis.call('DECR', KEYS[1])
+if mode ~= '0' then
+    redis.call('SETBIT', KEYS[3], ARGV[1], 1)
+end
+-- 订单写入本分片的 stream，由消费者组异步落库；MAXLEN ~ 按宏节点裁剪，开销很小
+redis.call('XADD', KEYS[4], 'MAXLEN', '~', ARGV[7], '*', 'userId', ARGV[1], 'voucherId', ARGV[4], 'id', ARGV[2])
+-- 按支付截止时间登记超时任务，member 为 订单id:券id:用户id:截止时间
+redis.call('ZADD', KEYS[5], ARGV[5], ARGV[2] .. ':' .. ARGV[4] .. ':' .. ARGV[1] .. ':' .. ARGV[5])
+return 0
@@ -0,0 +1,12 @@
+-- 秒杀准入许可租约，返回本次租到的许可数，0 表示该分片的许可已经发完
+-- 许可只在预热时按分片库存发放一次，补货和归还库存时按归还数量追加，这里不再按剩余库存重新发放
+-- KEYS[1] 分片的许可计数 key
+-- ARGV[1] 每次租约的许可数
+local permits = tonumber(redis.call('GET', KEYS[1]) or '0')
+if permits <= 0 then
+    return 0
+end
+
+local lease = math.min(permits, tonumber(ARGV[1]))
+redis.call('DECRBY', KEYS[1], lease)
+return lease
@@ -0,0 +1,7 @@
+-- 释放锁：锁仍属于本节点时才删除，返回 1 已释放，0 锁已过期或已被其他节点持有
+-- KEYS[1] 锁 key
+-- ARGV[1] 本节点加锁时写入的标识
+if redis.call('GET', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+return redis.call('DEL', KEYS[1])
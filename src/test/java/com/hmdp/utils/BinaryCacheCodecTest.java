@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.ShopVouchersDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryCacheCodecTest {
+
+    private final BinaryCacheCodec codec = new BinaryCacheCodec();
+
+    @Test
+    void roundTrip() {
+        Shop shop = shop();
+        byte[] bytes = codec.encode(shop);
+        assertTrue(codec.canDecode(bytes));
+        assertEquals(shop, codec.decode(bytes, Shop.class));
+    }
+
+    @Test
+    void nullFieldsStayNull() {
+        Shop shop = new Shop().setId(1L);
+        Shop decoded = codec.decode(codec.encode(shop), Shop.class);
+        assertEquals(1L, decoded.getId());
+        assertNull(decoded.getName());
+        assertNull(decoded.getCreateTime());
+    }
+
+    @Test
+    void listFieldKeepsElementType() {
+        ShopVouchersDTO shopVouchers = new ShopVouchersDTO();
+        shopVouchers.setVouchers(Arrays.asList(
+                new Voucher().setId(1L).setShopId(7L).setTitle("50元代金券").setPayValue(4750L).setActualValue(5000L),
+                new Voucher().setId(2L).setShopId(7L).setTitle("100元代金券").setStock(100)));
+        ShopVouchersDTO decoded = codec.decode(codec.encode(shopVouchers), ShopVouchersDTO.class);
+        assertEquals(shopVouchers, decoded);
+        assertEquals(Voucher.class, decoded.getVouchers().get(0).getClass());
+    }
+
+    @Test
+    void redisDataRoundTrip() {
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.of(2026, 1, 1, 12, 30, 15));
+        redisData.setDelta(42L);
+        redisData.setData(shop());
+        RedisData decoded = codec.decodeRedisData(codec.encodeRedisData(redisData), Shop.class);
+        assertEquals(redisData.getExpireTime(), decoded.getExpireTime());
+        assertEquals(42L, decoded.getDelta());
+        assertEquals(redisData.getData(), decoded.getData());
+    }
+
+    @Test
+    void doesNotClaimJson() {
+        byte[] json = JSONUtil.toJsonStr(shop()).getBytes(StandardCharsets.UTF_8);
+        assertFalse(codec.canDecode(json));
+        assertFalse(codec.canDecode(new byte[0]));
+    }
+
+    @Test
+    void rejectsForeignSchema() {
+        byte[] bytes = codec.encode(new RedisData());
+        assertThrows(IllegalStateException.class, () -> codec.decode(bytes, Shop.class));
+    }
+
+    @Test
+    void encodingIsStable() {
+        Shop shop = shop();
+        assertArrayEquals(codec.encode(shop), codec.encode(shop));
+    }
+
+    private static Shop shop() {
+        return new Shop()
+                .setId(7L)
+                .setName("茶餐厅")
+                .setTypeId(1L)
+                .setArea("大关")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setScore(37)
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39, 123000000));
+    }
+}
@@ -0,0 +1,51 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+
+    @Test
+    void containsEveryInsertedValue() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (long id = 1; id <= 10000; id++) {
+            filter.put(id);
+        }
+        for (long id = 1; id <= 10000; id++) {
+            assertTrue(filter.mightContain(id));
+        }
+    }
+
+    @Test
+    void falsePositiveRateStaysNearTarget() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (long id = 1; id <= 10000; id++) {
+            filter.put(id);
+        }
+        int falsePositives = 0;
+        for (long id = 10001; id <= 110000; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        // 期望 1%，留出余量
+        assertTrue(falsePositives < 2000, "误判数：" + falsePositives);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        assertFalse(filter.mightContain(1L));
+        assertFalse(filter.mightContain(0L));
+    }
+
+    @Test
+    void rejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1));
+    }
+}
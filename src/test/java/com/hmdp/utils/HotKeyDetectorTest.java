@@ -0,0 +1,53 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotKeyDetectorTest {
+
+    private final HotKeyDetector detector = new HotKeyDetector(true, 5, 60, 60, 100, 1024, 4);
+
+    @Test
+    void promotesAfterThreshold() {
+        for (int i = 0; i < 4; i++) {
+            assertNull(detector.get("cache:shop:1"));
+        }
+        detector.promoteIfHot("cache:shop:1", "shop");
+        assertNull(detector.get("cache:shop:1"));
+        assertTrue(detector.hotKeys().isEmpty());
+
+        // 第 5 次读取达到阈值
+        detector.promoteIfHot("cache:shop:1", "shop");
+        assertEquals("shop", detector.get("cache:shop:1"));
+        assertEquals(1, detector.hotKeys().size());
+        assertEquals("cache:shop:1", detector.hotKeys().get(0).getKey());
+    }
+
+    @Test
+    void hitsOnHotKeysAreStillCounted() {
+        for (int i = 0; i < 5; i++) {
+            detector.get("cache:shop:2");
+        }
+        detector.promoteIfHot("cache:shop:2", "shop");
+        for (int i = 0; i < 10; i++) {
+            assertEquals("shop", detector.get("cache:shop:2"));
+        }
+        // 热点缓存过期后重新晋升，估算次数包含命中热点缓存的读取
+        detector.evict("cache:shop:2");
+        detector.promoteIfHot("cache:shop:2", "shop");
+        assertEquals(15, detector.hotKeys().get(0).getFrequency().longValue());
+        assertEquals(0, detector.hotKeys().get(0).getHits().longValue());
+    }
+
+    @Test
+    void recordCountsReadsThatBypassTheHotCache() {
+        for (int i = 0; i < 5; i++) {
+            detector.record("cache:shop:3");
+        }
+        detector.promoteIfHot("cache:shop:3", "shop");
+        assertEquals("shop", detector.get("cache:shop:3"));
+    }
+}
@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeckillKeysTest {
+
+    @Test
+    void shardRoundTrip() {
+        String shard = SeckillKeys.shard(10L, 3);
+        assertEquals("10:3", shard);
+        assertEquals(10L, SeckillKeys.voucherId(shard).longValue());
+    }
+
+    @Test
+    void shardKeysShareOneHashTag() {
+        String shard = SeckillKeys.shard(10L, 3);
+        String[] keys = {SeckillKeys.stock(shard), SeckillKeys.window(shard), SeckillKeys.buyers(shard),
+                SeckillKeys.permit(shard), SeckillKeys.stream(shard), SeckillKeys.timeout(shard)};
+        for (String key : keys) {
+            // Redis Cluster 只按第一对花括号中的内容计算槽位
+            assertEquals("10:3", key.substring(key.indexOf('{') + 1, key.indexOf('}')));
+        }
+    }
+
+    @Test
+    void homeBucketIsStableAndInRange() {
+        for (long userId = -1000; userId < 1000; userId++) {
+            int bucket = SeckillKeys.homeBucket(userId, 7);
+            assertTrue(bucket >= 0 && bucket < 7);
+            assertEquals(bucket, SeckillKeys.homeBucket(userId, 7));
+        }
+        assertEquals(0, SeckillKeys.homeBucket(1010L, 1));
+    }
+}
@@ -0,0 +1,122 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.hmdp.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignedTokenCodecTest {
+
+    @Test
+    void roundTrip() throws Exception {
+        SignedTokenCodec codec = codec("secret", 720, "signed");
+        String token = codec.encode(user());
+        assertTrue(SignedTokenCodec.isSigned(token));
+
+        SignedTokenCodec.Claims claims = codec.decode(token);
+        assertNotNull(claims);
+        assertEquals(1010L, claims.getUser().getId());
+        assertEquals("小鱼同学", claims.getUser().getNickName());
+        assertEquals("/imgs/icons/user.png", claims.getUser().getIcon());
+        assertNotNull(claims.getTokenId());
+        assertTrue(claims.getExpireAt() > System.currentTimeMillis());
+    }
+
+    @Test
+    void rejectsTamperedPayload() throws Exception {
+        SignedTokenCodec codec = codec("secret", 720, "signed");
+        String token = codec.encode(user());
+        int dot = token.lastIndexOf('.');
+        String payload = "{\"id\":1,\"exp\":" + Long.MAX_VALUE + ",\"jti\":\"x\"}";
+        String forged = SignedTokenCodec.PREFIX
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes())
+                + token.substring(dot);
+        assertNull(codec.decode(forged));
+    }
+
+    @Test
+    void rejectsTamperedSignature() throws Exception {
+        SignedTokenCodec codec = codec("secret", 720, "signed");
+        String token = codec.encode(user());
+        // 修改签名的第一个字符，最后一个字符含有填充位，修改后可能解码出相同的签名
+        int dot = token.lastIndexOf('.');
+        char first = token.charAt(dot + 1);
+        String tampered = token.substring(0, dot + 1) + (first == 'A' ? 'B' : 'A') + token.substring(dot + 2);
+        assertNull(codec.decode(tampered));
+        assertNull(codec.decode(token.substring(0, dot)));
+        assertNull(codec.decode(token + "!"));
+    }
+
+    @Test
+    void rejectsTokenSignedWithAnotherSecret() throws Exception {
+        String token = codec("secret", 720, "signed").encode(user());
+        assertNull(codec("another", 720, "signed").decode(token));
+    }
+
+    @Test
+    void rejectsExpiredToken() throws Exception {
+        SignedTokenCodec codec = codec("secret", 0, "signed");
+        assertNull(codec.decode(codec.encode(user())));
+    }
+
+    @Test
+    void denylistRevokesTokenId() throws Exception {
+        SignedTokenCodec codec = codec("secret", 720, "signed");
+        SignedTokenCodec.Claims claims = codec.decode(codec.encode(user()));
+        assertNotNull(claims);
+
+        // 不访问 Redis：直接写入本地镜像
+        TokenDenylist denylist = new TokenDenylist();
+        assertFalse(denylist.isRevoked(claims.getTokenId()));
+        @SuppressWarnings("unchecked")
+        Map<String, Long> revoked = (Map<String, Long>) ReflectUtil.getFieldValue(denylist, "revoked");
+        revoked.put(claims.getTokenId(), claims.getExpireAt());
+        assertTrue(denylist.isRevoked(claims.getTokenId()));
+
+        // 其他令牌不受影响
+        SignedTokenCodec.Claims other = codec.decode(codec.encode(user()));
+        assertFalse(denylist.isRevoked(other.getTokenId()));
+    }
+
+    @Test
+    void signedModeRequiresSecret() {
+        InvocationTargetException e = assertThrows(InvocationTargetException.class, () -> codec("", 720, "signed"));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void sessionModeRejectsSignedTokensWithoutSecret() throws Exception {
+        String token = codec("secret", 720, "signed").encode(user());
+        assertNull(codec("", 720, "session").decode(token));
+    }
+
+    private static SignedTokenCodec codec(String secret, long ttlMinutes, String mode) throws Exception {
+        SignedTokenCodec codec = new SignedTokenCodec();
+        ReflectUtil.setFieldValue(codec, "secret", secret);
+        ReflectUtil.setFieldValue(codec, "ttlMinutes", ttlMinutes);
+        ReflectUtil.setFieldValue(codec, "mode", mode);
+        Method init = SignedTokenCodec.class.getDeclaredMethod("init");
+        init.setAccessible(true);
+        init.invoke(codec);
+        return codec;
+    }
+
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setId(1010L);
+        user.setNickName("小鱼同学");
+        user.setIcon("/imgs/icons/user.png");
+        return user;
+    }
+}
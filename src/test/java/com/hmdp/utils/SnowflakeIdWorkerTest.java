@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.ReflectUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeIdWorkerTest {
+
+    private static final long BEGIN_TIMESTAMP = 1722441600000L;
+    private static final long WORKER_ID = 37;
+
+    private SnowflakeIdWorker worker;
+
+    @BeforeEach
+    void setUp() throws UnknownHostException {
+        // 不访问 Redis：直接设置租到的 worker id 和租约截止时间
+        worker = new SnowflakeIdWorker(null);
+        ReflectUtil.setFieldValue(worker, "workerId", WORKER_ID);
+        ReflectUtil.setFieldValue(worker, "leaseValidUntil", System.currentTimeMillis() + 60000);
+        ReflectUtil.setFieldValue(worker, "maxBackwardMillis", 10L);
+    }
+
+    @Test
+    void idsAreUniqueAndIncreasing() {
+        Set<Long> ids = new HashSet<>();
+        long last = 0;
+        for (int i = 0; i < 100000; i++) {
+            long id = worker.nextId("order");
+            assertTrue(id > last, "id 未递增：" + id + " <= " + last);
+            assertTrue(ids.add(id));
+            last = id;
+        }
+    }
+
+    @Test
+    void idsAreUniqueAcrossThreads() throws InterruptedException {
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    ids.add(worker.nextId("order"));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, ids.size());
+    }
+
+    @Test
+    void idCarriesModeFlagAndWorkerId() {
+        long before = System.currentTimeMillis() - BEGIN_TIMESTAMP;
+        long id = worker.nextId("order");
+        long after = System.currentTimeMillis() - BEGIN_TIMESTAMP;
+        assertEquals(1, id >>> 62);
+        assertEquals(WORKER_ID, (id >>> 12) & 1023);
+        long timestamp = (id >>> 22) & ((1L << 40) - 1);
+        assertTrue(timestamp >= before && timestamp <= after);
+    }
+
+    @Test
+    void smallClockRollbackKeepsLastTimestamp() {
+        long ahead = System.currentTimeMillis() - BEGIN_TIMESTAMP + 8;
+        state().set(ahead << 12);
+        long id = worker.nextId("order");
+        assertEquals(ahead, (id >>> 22) & ((1L << 40) - 1));
+        assertEquals(1, id & 4095);
+    }
+
+    @Test
+    void rejectsLargeClockRollback() {
+        long ahead = System.currentTimeMillis() - BEGIN_TIMESTAMP + 1000;
+        state().set(ahead << 12);
+        assertThrows(IllegalStateException.class, () -> worker.nextId("order"));
+    }
+
+    @Test
+    void rejectsAfterLeaseExpired() {
+        ReflectUtil.setFieldValue(worker, "leaseValidUntil", System.currentTimeMillis() - 1);
+        assertThrows(IllegalStateException.class, () -> worker.nextId("order"));
+    }
+
+    private AtomicLong state() {
+        return (AtomicLong) ReflectUtil.getFieldValue(worker, "state");
+    }
+}
@@ -0,0 +1,156 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.ReflectUtil;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoucherOrderBatchWriterTest {
+
+    /**
+     * 每次批量写入的订单id
+     */
+    private final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * 逐条写入成功的订单id
+     */
+    private final List<Long> singles = Collections.synchronizedList(new ArrayList<>());
+    /**
+     * 写入时抛出异常的订单id，批量写入包含其中任一订单时整批失败
+     */
+    private final Set<Long> broken = ConcurrentHashMap.newKeySet();
+    /**
+     * 逐条写入时已存在的订单id
+     */
+    private final Set<Long> duplicated = ConcurrentHashMap.newKeySet();
+
+    private VoucherOrderBatchWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        if (writer != null) {
+            invoke(writer, "destroy");
+        }
+    }
+
+    @Test
+    void groupsConcurrentOrdersIntoOneBatch() {
+        writer = writer(100, 200);
+        List<CompletableFuture<Void>> futures = submit(1, 2, 3, 4, 5);
+        futures.forEach(CompletableFuture::join);
+        assertEquals(1, batches.size());
+        assertEquals(5, batches.get(0).size());
+        assertTrue(singles.isEmpty());
+    }
+
+    @Test
+    void capsBatchAtMaxSize() {
+        writer = writer(2, 200);
+        submit(1, 2, 3, 4, 5).forEach(CompletableFuture::join);
+        int total = 0;
+        for (List<Long> batch : batches) {
+            assertTrue(batch.size() <= 2);
+            total += batch.size();
+        }
+        assertEquals(5, total);
+    }
+
+    @Test
+    void isolatesBadOrderAfterBatchFailure() {
+        broken.add(2L);
+        duplicated.add(3L);
+        writer = writer(100, 200);
+        List<CompletableFuture<Void>> futures = submit(1, 2, 3);
+        futures.get(0).join();
+        // 坏数据只影响自己，已存在的订单视为成功
+        CompletionException e = assertThrows(CompletionException.class, () -> futures.get(1).join());
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        futures.get(2).join();
+        assertTrue(batches.isEmpty());
+        assertEquals(Collections.singletonList(1L), singles);
+    }
+
+    @Test
+    void rejectsOrdersAfterShutdown() {
+        writer = writer(100, 10);
+        invoke(writer, "destroy");
+        CompletableFuture<Void> future = writer.submit(new VoucherOrder().setId(1L));
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        writer = null;
+    }
+
+    private List<CompletableFuture<Void>> submit(long... ids) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            futures.add(writer.submit(new VoucherOrder().setId(id).setUserId(1010L).setVoucherId(10L)));
+        }
+        return futures;
+    }
+
+    private VoucherOrderBatchWriter writer(int maxSize, long maxWaitMillis) {
+        // 不启动 Spring：用动态代理模拟订单服务，只实现批量写入和逐条写入
+        IVoucherOrderService service = (IVoucherOrderService) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[]{IVoucherOrderService.class}, (proxy, method, args) -> {
+                    if ("createVoucherOrders".equals(method.getName())) {
+                        @SuppressWarnings("unchecked")
+                        List<VoucherOrder> orders = (List<VoucherOrder>) args[0];
+                        List<Long> ids = new ArrayList<>(orders.size());
+                        for (VoucherOrder order : orders) {
+                            if (broken.contains(order.getId()) || duplicated.contains(order.getId())) {
+                                throw new IllegalStateException("批量写入失败");
+                            }
+                            ids.add(order.getId());
+                        }
+                        batches.add(ids);
+                        return null;
+                    }
+                    if ("createVoucherOrder".equals(method.getName())) {
+                        Long id = ((VoucherOrder) args[0]).getId();
+                        if (broken.contains(id)) {
+                            throw new IllegalStateException("坏数据：" + id);
+                        }
+                        if (duplicated.contains(id)) {
+                            throw new DuplicateKeyException("订单已存在：" + id);
+                        }
+                        singles.add(id);
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        VoucherOrderBatchWriter writer = new VoucherOrderBatchWriter();
+        ReflectUtil.setFieldValue(writer, "voucherOrderService", service);
+        ReflectUtil.setFieldValue(writer, "meterRegistry", new SimpleMeterRegistry());
+        ReflectUtil.setFieldValue(writer, "maxSize", maxSize);
+        ReflectUtil.setFieldValue(writer, "maxWaitMillis", maxWaitMillis);
+        invoke(writer, "init");
+        return writer;
+    }
+
+    private static void invoke(VoucherOrderBatchWriter writer, String name) {
+        try {
+            Method method = VoucherOrderBatchWriter.class.getDeclaredMethod(name);
+            method.setAccessible(true);
+            method.invoke(writer);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}